@@ -0,0 +1,137 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.benchmarks;
+
+import com.propentus.smartlog.security.AesCryptoHandler;
+import com.propentus.smartlog.security.MessageEnvelope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AES encryption and decryption of UBL payloads through String, byte[] and ByteBuffer paths of AesCryptoHandler,
+ * and version 2 (AES-GCM) messages of MessageEnvelope.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AesCryptoBenchmark {
+
+    @Param({"1024", "16384", "131072", "1048576"})
+    public int payloadSize;
+
+    private String key;
+    private byte[] keyBytes;
+    private String plaintext;
+    private byte[] plaintextBytes;
+    private String encrypted;
+    private byte[] encryptedBytes;
+    private ByteBuffer encryptedBuffer;
+    private ByteBuffer outputBuffer;
+    private byte[] gcmKey;
+    private String encryptedV2;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        key = AesCryptoHandler.generateRandomKey();
+        keyBytes = AesCryptoHandler.toKeyBytes(key);
+        plaintext = UblPayloads.xml(payloadSize);
+        plaintextBytes = plaintext.getBytes(StandardCharsets.UTF_8);
+        encrypted = new AesCryptoHandler(plaintext).encrypt(key);
+        encryptedBytes = AesCryptoHandler.encrypt(keyBytes, plaintextBytes);
+        encryptedBuffer = ByteBuffer.allocateDirect(encryptedBytes.length);
+        encryptedBuffer.put(encryptedBytes).flip();
+        outputBuffer = ByteBuffer.allocateDirect(AesCryptoHandler.getOutputSize(plaintextBytes.length));
+        gcmKey = MessageEnvelope.generateKey();
+        encryptedV2 = MessageEnvelope.encrypt(gcmKey, plaintext);
+    }
+
+    @Benchmark
+    public String encryptString() {
+        return new AesCryptoHandler(plaintext).encrypt(key);
+    }
+
+    @Benchmark
+    public String decryptString() {
+        return AesCryptoHandler.decrypt(key, encrypted);
+    }
+
+    @Benchmark
+    public byte[] encryptBytes() throws GeneralSecurityException {
+        return AesCryptoHandler.encrypt(keyBytes, plaintextBytes);
+    }
+
+    @Benchmark
+    public byte[] decryptBytes() throws GeneralSecurityException {
+        return AesCryptoHandler.decrypt(keyBytes, encryptedBytes);
+    }
+
+    @Benchmark
+    public int decryptByteBuffer() throws GeneralSecurityException {
+        encryptedBuffer.rewind();
+        outputBuffer.clear();
+        return AesCryptoHandler.decrypt(keyBytes, encryptedBuffer, outputBuffer);
+    }
+
+    @Benchmark
+    public byte[] encryptBytesGcm() throws GeneralSecurityException {
+        return AesCryptoHandler.encryptGcm(gcmKey, plaintextBytes);
+    }
+
+    @Benchmark
+    public String encryptEnvelopeV2() {
+        return MessageEnvelope.encrypt(gcmKey, plaintext);
+    }
+
+    @Benchmark
+    public String decryptEnvelopeV1() {
+        return MessageEnvelope.decrypt(keyBytes, encrypted);
+    }
+
+    @Benchmark
+    public String decryptEnvelopeV2() {
+        return MessageEnvelope.decrypt(gcmKey, encryptedV2);
+    }
+}
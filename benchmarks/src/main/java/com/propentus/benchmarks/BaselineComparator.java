@@ -0,0 +1,149 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files (-rf json) and reports score and allocation changes.
+ * Exits with status 1 if any benchmark regressed more than the allowed percentage.
+ *
+ * Usage: BaselineComparator baseline.json current.json [allowedRegressionPercent]
+ */
+public class BaselineComparator {
+
+    private static final String ALLOCATION_METRIC = "·gc.alloc.rate.norm";
+
+    private static class Result {
+        final boolean higherIsBetter;
+        final double score;
+        final String unit;
+        final Double allocatedBytes;
+
+        Result(boolean higherIsBetter, double score, String unit, Double allocatedBytes) {
+            this.higherIsBetter = higherIsBetter;
+            this.score = score;
+            this.unit = unit;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator baseline.json current.json [allowedRegressionPercent]");
+            System.exit(2);
+        }
+
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> current = read(args[1]);
+        double allowedRegression = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : new TreeMap<>(current).entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println(String.format("NEW        %s: %.3f %s", entry.getKey(), entry.getValue().score, entry.getValue().unit));
+                continue;
+            }
+            Result after = entry.getValue();
+
+            //Positive change is always an improvement, regardless of benchmark mode
+            double change = (after.score - before.score) / before.score * 100;
+            if (!after.higherIsBetter) {
+                change = -change;
+            }
+            boolean regressed = change < -allowedRegression;
+            if (regressed) {
+                regressions++;
+            }
+
+            String allocation = "";
+            if (before.allocatedBytes != null && after.allocatedBytes != null) {
+                allocation = String.format(", allocated %.0f -> %.0f B/op", before.allocatedBytes, after.allocatedBytes);
+            }
+            System.out.println(String.format("%-10s %s: %.3f -> %.3f %s (%+.1f%%)%s", regressed ? "REGRESSED" : "OK",
+                    entry.getKey(), before.score, after.score, after.unit, change, allocation));
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed more than " + allowedRegression + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Result> read(String path) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+            for (JsonElement element : runs) {
+                JsonObject run = element.getAsJsonObject();
+                JsonObject primary = run.getAsJsonObject("primaryMetric");
+
+                Double allocatedBytes = null;
+                JsonObject secondary = run.getAsJsonObject("secondaryMetrics");
+                if (secondary != null && secondary.has(ALLOCATION_METRIC)) {
+                    allocatedBytes = secondary.getAsJsonObject(ALLOCATION_METRIC).get("score").getAsDouble();
+                }
+
+                results.put(key(run), new Result("thrpt".equals(run.get("mode").getAsString()),
+                        primary.get("score").getAsDouble(), primary.get("scoreUnit").getAsString(), allocatedBytes));
+            }
+        }
+        return results;
+    }
+
+    private static String key(JsonObject run) {
+        StringBuilder key = new StringBuilder(run.get("benchmark").getAsString());
+        JsonObject params = run.getAsJsonObject("params");
+        if (params != null) {
+            //Sort params so that key doesn't depend on their order in the file
+            Map<String, String> sortedParams = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> param : params.entrySet()) {
+                sortedParams.put(param.getKey(), param.getValue().getAsString());
+            }
+            for (Map.Entry<String, String> param : sortedParams.entrySet()) {
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+            }
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.benchmarks;
+
+import com.propentus.iot.chaincode.ChaincodeRequestFactory;
+import org.hyperledger.fabric.sdk.Enrollment;
+import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
+import org.hyperledger.fabric.sdk.TransactionProposalRequest;
+import org.hyperledger.fabric.sdk.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building chaincode requests with ChaincodeRequestFactory, done for every query and transaction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChaincodeRequestBenchmark {
+
+    @Param({"1024", "131072"})
+    public int payloadSize;
+
+    private ChaincodeRequestFactory requestFactory;
+    private User user;
+    private ArrayList<String> args;
+    private byte[][] argBytes;
+
+    @Setup
+    public void setUp() {
+        requestFactory = new ChaincodeRequestFactory("UBL", "smartlog_chaincode/UBL", "3.6");
+        user = new BenchmarkUser();
+        args = new ArrayList<String>();
+        args.add(java.util.Base64.getEncoder().encodeToString(UblPayloads.randomBytes(payloadSize)));
+        args.add("KouvolaMSP_1552551330000_AbCdEfGhIj");
+        argBytes = new byte[][] {args.get(0).getBytes(StandardCharsets.US_ASCII), args.get(1).getBytes(StandardCharsets.US_ASCII)};
+    }
+
+    @Benchmark
+    public TransactionProposalRequest createTransaction() {
+        return requestFactory.createTransaction(user, "addMessage", args);
+    }
+
+    @Benchmark
+    public TransactionProposalRequest createTransactionWithArgBytes() {
+        return requestFactory.createTransaction(user, "addMessage", argBytes);
+    }
+
+    @Benchmark
+    public QueryByChaincodeRequest createQuery() {
+        return requestFactory.createQuery(user, "getMessage", args);
+    }
+
+    /**
+     * User without enrollment, request building doesn't need one.
+     */
+    private static class BenchmarkUser implements User {
+
+        @Override
+        public String getName() {
+            return "benchmark";
+        }
+
+        @Override
+        public Set<String> getRoles() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public String getAccount() {
+            return null;
+        }
+
+        @Override
+        public String getAffiliation() {
+            return null;
+        }
+
+        @Override
+        public Enrollment getEnrollment() {
+            return null;
+        }
+
+        @Override
+        public String getMspId() {
+            return "KouvolaMSP";
+        }
+    }
+}
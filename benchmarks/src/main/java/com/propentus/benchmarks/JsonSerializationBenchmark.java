@@ -0,0 +1,96 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.benchmarks;
+
+import com.propentus.common.util.EntityUtil;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of UBLChaincodeTO with EntityUtil, and the full ledger encoding (JSON + Base64)
+ * done for every message sent to UBL Smart contract.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"1024", "16384", "131072", "1048576"})
+    public int payloadSize;
+
+    @Param({"3"})
+    public int participants;
+
+    private UBLChaincodeTO message;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        message = UblPayloads.chaincodeTO(payloadSize, participants);
+        json = EntityUtil.ObjectToJson(message);
+    }
+
+    @Benchmark
+    public String objectToJson() {
+        return EntityUtil.ObjectToJson(message);
+    }
+
+    @Benchmark
+    public String objectToCompactJson() {
+        return EntityUtil.ObjectToCompactJson(message);
+    }
+
+    @Benchmark
+    public UBLChaincodeTO jsonToObject() {
+        return EntityUtil.JsonToObject(json, UBLChaincodeTO.class);
+    }
+
+    @Benchmark
+    public String encodeForLedger() {
+        String json = EntityUtil.ObjectToCompactJson(message);
+        return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
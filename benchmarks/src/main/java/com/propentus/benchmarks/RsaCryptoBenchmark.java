@@ -0,0 +1,90 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.benchmarks;
+
+import com.propentus.smartlog.security.AesCryptoHandler;
+import com.propentus.smartlog.security.RsaCryptoHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RSA wrapping and unwrapping of AES message keys, done once per participant for every UBL message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RsaCryptoBenchmark {
+
+    private KeyPair keyPair;
+    private String messageKey;
+    private String wrappedKey;
+    private Cipher decryptCipher;
+
+    @Setup
+    public void setUp() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        messageKey = AesCryptoHandler.generateRandomKey();
+        wrappedKey = RsaCryptoHandler.encrypt(messageKey, keyPair);
+        decryptCipher = RsaCryptoHandler.createDecryptCipher(keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public String wrapKey() {
+        return RsaCryptoHandler.encrypt(messageKey, keyPair);
+    }
+
+    @Benchmark
+    public String unwrapKey() {
+        return RsaCryptoHandler.decrypt(wrappedKey, keyPair);
+    }
+
+    @Benchmark
+    public byte[] unwrapKeyWithCachedCipher() {
+        return RsaCryptoHandler.unwrapKey(wrappedKey, decryptCipher);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.benchmarks;
+
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates UBL payloads of given size for benchmarks.
+ */
+public final class UblPayloads {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<TransportationStatus xmlns=\"urn:oasis:names:specification:ubl:schema:xsd:TransportationStatus-2\"\n"
+            + "    xmlns:cac=\"urn:oasis:names:specification:ubl:schema:xsd:CommonAggregateComponents-2\"\n"
+            + "    xmlns:cbc=\"urn:oasis:names:specification:ubl:schema:xsd:CommonBasicComponents-2\">\n"
+            + "  <cbc:UBLVersionID>2.2</cbc:UBLVersionID>\n"
+            + "  <cbc:ID>%s</cbc:ID>\n"
+            + "  <cbc:IssueDate>2019-03-14</cbc:IssueDate>\n"
+            + "  <cbc:IssueTime>10:15:30+02:00</cbc:IssueTime>\n";
+
+    private static final String STATUS = "  <cac:Status>\n"
+            + "    <cbc:ConditionCode>%d</cbc:ConditionCode>\n"
+            + "    <cbc:ReferenceDate>2019-03-14</cbc:ReferenceDate>\n"
+            + "    <cbc:ReferenceTime>10:%02d:00+02:00</cbc:ReferenceTime>\n"
+            + "    <cbc:StatusReasonCode>LOADED</cbc:StatusReasonCode>\n"
+            + "    <cac:StatusLocation><cbc:ID>RFID-GATE-%04d</cbc:ID><cbc:Name>Kouvola RRT</cbc:Name></cac:StatusLocation>\n"
+            + "    <cac:TransportEquipment><cbc:ID>MSCU%07d</cbc:ID><cbc:TransportEquipmentTypeCode>CN</cbc:TransportEquipmentTypeCode></cac:TransportEquipment>\n"
+            + "  </cac:Status>\n";
+
+    private static final String FOOTER = "</TransportationStatus>\n";
+
+    private UblPayloads() {
+    }
+
+    /**
+     * UBL TransportationStatus XML with status elements repeated until it is at least given size in bytes.
+     * @param size
+     * @return
+     */
+    public static String xml(int size) {
+        StringBuilder xml = new StringBuilder(size + 512);
+        xml.append(String.format(HEADER, "TS-" + size));
+        int i = 0;
+        while (xml.length() + FOOTER.length() < size) {
+            xml.append(String.format(STATUS, i % 10, i % 60, i % 10000, i % 10000000));
+            i++;
+        }
+        return xml.append(FOOTER).toString();
+    }
+
+    /**
+     * UBLChaincodeTO with given amount of participants, carrying encrypted message of given size
+     * as it is sent to the ledger.
+     * @param messageSize
+     * @param participants
+     * @return
+     */
+    public static UBLChaincodeTO chaincodeTO(int messageSize, int participants) {
+        UBLChaincodeTO message = new UBLChaincodeTO();
+        message.setEncryptedMessage(base64Like(messageSize));
+        message.setDocumentID("TS-" + messageSize);
+        message.setOrganisationID("KouvolaMSP");
+        message.setSupplyChainID("SC-0001");
+        message.setContainerID("MSCU1234565");
+        message.setSenderParty("Kouvola Innovation Oy");
+        message.setRFIDTransportEquipment("urn:epc:id:giai:6430045.1234565");
+        message.setRFIDTransportHandlingUnit("urn:epc:id:giai:6430045.7654321");
+        message.setStatusTypeCode("LOADED");
+        message.setTimestamp("2019-03-14 10:15:30+02:00");
+        message.setCarrierAssignedID("BK-445566");
+        message.setShippingOrderID("SO-778899");
+        message.setEmptyFullIndicator(UBLChaincodeTO.FullEmptyIndicator.FULL);
+        message.setContentType("UBL");
+        message.setContentTypeSchemeVersion("2.2");
+        message.setStatusLocationId("RFID-GATE-0001");
+        for (int i = 0; i < participants; i++) {
+            UBLChaincodeTO.Participant participant = new UBLChaincodeTO.Participant();
+            participant.setMSPID("Org" + i + "MSP");
+            participant.setEncryptedKey(base64Like(344));
+            message.getParticipants().add(participant);
+        }
+        return message;
+    }
+
+    /**
+     * Random bytes of given size.
+     * @param size
+     * @return
+     */
+    public static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String base64Like(int length) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        char[] chars = new char[length];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot;
+
+import com.google.protobuf.ByteString;
+import com.propentus.common.util.EntityUtil;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+import com.propentus.iot.configs.OrganisationConfiguration;
+import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
+import org.hyperledger.fabric.sdk.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * BlockchainConnector which doesn't connect to network. Queries "getMessage" and "getMessages" are answered from
+ * in-memory ledger, and every query takes given round-trip latency no matter how many keys it reads.
+ */
+public class StubBlockchainConnector extends BlockchainConnector {
+
+    private final long queryLatencyMicros;
+    private final Map<String, String> ledger = new ConcurrentHashMap<>();
+    private final AtomicLong queryCounter = new AtomicLong();
+
+    public StubBlockchainConnector(long queryLatencyMicros) {
+        super(null, DEFAULT_MAX_IN_FLIGHT_TRANSACTIONS);
+        this.queryLatencyMicros = queryLatencyMicros;
+    }
+
+    public void put(String key, UBLChaincodeTO message) {
+        ledger.put(key, EntityUtil.ObjectToCompactJson(message));
+    }
+
+    /**
+     * Amount of queries received since creation.
+     * @return
+     */
+    public long getQueryCount() {
+        return queryCounter.get();
+    }
+
+    @Override
+    public ByteString doQueryForPayload(QueryByChaincodeRequest request) {
+
+        queryCounter.incrementAndGet();
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(queryLatencyMicros));
+
+        List<String> args = request.getArgs();
+        switch (request.getFcn()) {
+            case "getMessage":
+                String message = ledger.get(args.get(0));
+                return message == null ? ByteString.EMPTY : ByteString.copyFromUtf8(message);
+            case "getMessages":
+                List<String> messages = new ArrayList<>(args.size());
+                for (String key : args) {
+                    String stored = ledger.get(key);
+                    messages.add(stored == null ? "null" : stored);
+                }
+                return ByteString.copyFromUtf8("[" + String.join(",", messages) + "]");
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public User getUser() {
+        return null;
+    }
+
+    @Override
+    public OrganisationConfiguration getConfig() {
+        return null;
+    }
+}
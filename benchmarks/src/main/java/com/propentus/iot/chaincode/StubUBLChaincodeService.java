@@ -0,0 +1,80 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode;
+
+import com.propentus.iot.TxResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UBLChaincodeService which doesn't connect to network. Every transaction takes given commit latency, and only
+ * maxInFlight transactions can be pending at once, like with BlockchainConnector. Cost of a transaction doesn't depend
+ * on how many messages it has, which models endorsement and ordering round-trips dominating the commit time.
+ */
+class StubUBLChaincodeService extends UBLChaincodeService {
+
+    private final long commitLatencyMicros;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService committer = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong transactionCounter = new AtomicLong();
+    private final AtomicLong keyCounter = new AtomicLong();
+
+    StubUBLChaincodeService(long commitLatencyMicros, int maxInFlight) {
+        super(null);
+        this.commitLatencyMicros = commitLatencyMicros;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public CompletableFuture<TxResult> addMessagesAsync(List<String> encodedMessages, List<String> keys) {
+        inFlight.acquireUninterruptibly();
+        CompletableFuture<TxResult> result = new CompletableFuture<>();
+        String txID = Long.toString(transactionCounter.incrementAndGet());
+        committer.schedule(() -> {
+            inFlight.release();
+            result.complete(new TxResult(txID, "", true, (byte) 0, commitLatencyMicros / 1000));
+        }, commitLatencyMicros, TimeUnit.MICROSECONDS);
+        return result;
+    }
+
+    @Override
+    String generateRandomKey() {
+        return "BenchmarkMSP_" + keyCounter.incrementAndGet();
+    }
+
+    void shutdown() {
+        committer.shutdownNow();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode;
+
+import com.propentus.benchmarks.UblPayloads;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second written through UBLBatchWriter against a simulated ledger, see StubUBLChaincodeService.
+ * maxBatchSize 1 sends every message in its own transaction, like UBLChaincodeService.addMessage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UBLBatchWriterBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    @Param({"1", "10", "50"})
+    public int maxBatchSize;
+
+    @Param({"2000"})
+    public long commitLatencyMicros;
+
+    @Param({"64"})
+    public int maxInFlight;
+
+    private StubUBLChaincodeService service;
+    private UBLBatchWriter writer;
+    private UBLChaincodeTO message;
+
+    @Setup
+    public void setUp() {
+        service = new StubUBLChaincodeService(commitLatencyMicros, maxInFlight);
+        writer = new UBLBatchWriter(service, maxBatchSize, UBLBatchWriter.DEFAULT_MAX_BATCH_BYTES, UBLBatchWriter.DEFAULT_LINGER_MILLIS);
+        message = UblPayloads.chaincodeTO(2048, 3);
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.close();
+        service.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void writeMessages() throws UnsupportedEncodingException {
+        CompletableFuture<?>[] results = new CompletableFuture<?>[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            results[i] = writer.write(message);
+        }
+        writer.flush();
+        CompletableFuture.allOf(results).join();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode;
+
+import com.propentus.benchmarks.UblPayloads;
+import com.propentus.iot.StubBlockchainConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read a set of UBL messages with one "getMessage" query per key, compared to batched "getMessages" queries.
+ * Every query to StubBlockchainConnector takes latencyMicros, so the difference is the saved round-trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UBLGetMessagesBenchmark {
+
+    @Param({"200"})
+    public int keys;
+
+    @Param({"1000"})
+    public long latencyMicros;
+
+    @Param({"1024"})
+    public int messageSize;
+
+    private UBLChaincodeService service;
+    private List<String> keyList;
+
+    @Setup
+    public void setUp() {
+        StubBlockchainConnector connector = new StubBlockchainConnector(latencyMicros);
+        keyList = new ArrayList<>(keys);
+        for (int i = 0; i < keys; i++) {
+            String key = "BenchmarkMSP_" + i;
+            connector.put(key, UblPayloads.chaincodeTO(messageSize, 2));
+            keyList.add(key);
+        }
+        service = new UBLChaincodeService(connector);
+    }
+
+    @Benchmark
+    public void getMessageOneByOne(Blackhole blackhole) {
+        for (String key : keyList) {
+            blackhole.consume(service.getMessage(key));
+        }
+    }
+
+    @Benchmark
+    public void getMessages(Blackhole blackhole) {
+        blackhole.consume(service.getMessages(keyList));
+    }
+}
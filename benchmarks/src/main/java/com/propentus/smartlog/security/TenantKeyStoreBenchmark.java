@@ -0,0 +1,128 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Private key lookup of one tenant domain in cloud mode, with key directory of 100 to 1000 domains.
+ * tenantKeyStore is a warm TenantKeyStore lookup, privateKeyCache checks the key file on every lookup like
+ * MessageDecryptor did before, and loadPrivateKey reads and decodes the key file every time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TenantKeyStoreBenchmark {
+
+    @Param({"100", "1000"})
+    public int domains;
+
+    private Path root;
+    private String[] domainNames;
+    private String[] keyPaths;
+    private TenantKeyStore store;
+    private PrivateKeyCache cache;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        byte[] encodedKey = generator.generateKeyPair().getPrivate().getEncoded();
+
+        root = Files.createTempDirectory("tenant-keys");
+        domainNames = new String[domains];
+        keyPaths = new String[domains];
+        for (int i = 0; i < domains; i++) {
+            domainNames[i] = "tenant" + i + ".example.com";
+            Path keyDirectory = Files.createDirectories(root.resolve(domainNames[i]).resolve(TenantKeyStore.KEY_DIRECTORY));
+            keyPaths[i] = Files.write(keyDirectory.resolve(TenantKeyStore.KEY_FILE_NAME), encodedKey).toString();
+        }
+
+        store = new TenantKeyStore(root.toString(), domains);
+        cache = new PrivateKeyCache(domains);
+        for (int i = 0; i < domains; i++) {
+            store.get(domainNames[i]);
+            cache.get(keyPaths[i], "RSA");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private int nextDomain() {
+        next = next + 1 < domains ? next + 1 : 0;
+        return next;
+    }
+
+    @Benchmark
+    public PrivateKey tenantKeyStore() throws Exception {
+        return store.get(domainNames[nextDomain()]).getPrivateKey();
+    }
+
+    @Benchmark
+    public PrivateKey privateKeyCache() throws Exception {
+        return cache.get(keyPaths[nextDomain()], "RSA").getPrivateKey();
+    }
+
+    @Benchmark
+    public PrivateKey loadPrivateKey() throws Exception {
+        return CryptoUtil.loadPrivateKey(Paths.get(keyPaths[nextDomain()]), "RSA");
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.util;
+
+import com.propentus.benchmarks.UblPayloads;
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.iot.StubBlockchainConnector;
+import com.propentus.iot.chaincode.KeystoreChaincodeService;
+import com.propentus.iot.chaincode.TransportChainChaincode;
+import com.propentus.iot.chaincode.model.OrganisationChaincodeTO;
+import com.propentus.iot.chaincode.model.TransportChaincodeTO;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+import com.propentus.smartlog.security.CryptoUtil;
+import com.propentus.smartlog.security.MessageEnvelope;
+import com.propentus.smartlog.security.RsaCryptoHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second encrypted for supply chains of 2 to 50 participants. encryptParallel uses MessageEncryptor,
+ * encryptSerial wraps the secret key for one participant after another, like senders did before.
+ * Transport chain and Keystore are served from memory, so only encryption is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageEncryptorBenchmark {
+
+    private static final String SUPPLY_CHAIN_ID = "benchmark-chain";
+
+    @Param({"2", "10", "50"})
+    public int participants;
+
+    @Param({"16384"})
+    public int messageSize;
+
+    private MessageEncryptor encryptor;
+    private String ubl;
+    private List<String> mspIDs;
+    private List<PublicKey> publicKeys;
+
+    @Setup
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+
+        mspIDs = new ArrayList<>(participants);
+        publicKeys = new ArrayList<>(participants);
+        Map<String, OrganisationChaincodeTO> organisations = new HashMap<>();
+        for (int i = 0; i < participants; i++) {
+            String mspID = "BenchmarkMSP" + i;
+            PublicKey publicKey = generator.generateKeyPair().getPublic();
+            OrganisationChaincodeTO organisation = new OrganisationChaincodeTO();
+            organisation.setMspID(mspID);
+            organisation.setPublicKey(CryptoUtil.publicKeyToString(publicKey));
+            organisations.put(mspID, organisation);
+            mspIDs.add(mspID);
+            publicKeys.add(publicKey);
+        }
+
+        TransportChaincodeTO chain = new TransportChaincodeTO();
+        chain.setId(SUPPLY_CHAIN_ID);
+        chain.setParticipants(mspIDs);
+
+        StubBlockchainConnector connector = new StubBlockchainConnector(0);
+        TransportChainChaincode transportChains = new TransportChainChaincode(connector) {
+            @Override
+            public TransportChaincodeTO[] getTransportChain(String chainID) {
+                return new TransportChaincodeTO[] { chain };
+            }
+        };
+        KeystoreChaincodeService keystore = new KeystoreChaincodeService(connector) {
+            @Override
+            public OrganisationChaincodeTO getOrganisation(String mspID) {
+                return organisations.get(mspID);
+            }
+        };
+
+        encryptor = new MessageEncryptor(transportChains, keystore);
+        ubl = UblPayloads.xml(messageSize);
+    }
+
+    @Benchmark
+    public UBLChaincodeTO encryptParallel() throws BlockchainException {
+        UBLChaincodeTO message = new UBLChaincodeTO();
+        message.setSupplyChainID(SUPPLY_CHAIN_ID);
+        return encryptor.encrypt(message, ubl);
+    }
+
+    @Benchmark
+    public UBLChaincodeTO encryptSerial() throws Exception {
+        UBLChaincodeTO message = new UBLChaincodeTO();
+        message.setSupplyChainID(SUPPLY_CHAIN_ID);
+
+        byte[] secretKey = MessageEnvelope.generateKey();
+        message.setEncryptedMessage(MessageEnvelope.encrypt(secretKey, ubl));
+        for (int i = 0; i < participants; i++) {
+            UBLChaincodeTO.Participant participant = new UBLChaincodeTO.Participant();
+            participant.setMSPID(mspIDs.get(i));
+            participant.setEncryptedKey(RsaCryptoHandler.wrapKey(secretKey, publicKeys.get(i)));
+            message.getParticipants().add(participant);
+        }
+        return message;
+    }
+}
@@ -30,16 +30,33 @@ package com.propentus.iot;
 
 import com.propentus.common.exception.BlockchainException;
 import com.propentus.common.exception.ConfigurationException;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
 import com.propentus.iot.configs.BasicSettingInitializer;
 import com.propentus.iot.configs.OrganisationConfiguration;
+import com.propentus.iot.peer.PeerHealthChecker;
+import com.propentus.iot.peer.PeerSelector;
+import com.propentus.iot.peer.PeerStatisticsRegistry;
+import com.google.protobuf.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.hyperledger.fabric.sdk.*;
 import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
 import org.hyperledger.fabric.sdk.exception.ProposalException;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -49,30 +66,93 @@ public class BlockchainConnector {
 
     private static final Logger logger = LoggerFactory.getLogger(BlockchainConnector.class);
 
+    //Default maximum amount of asynchronous transactions waiting for endorsement or commit at the same time
+    public static final int DEFAULT_MAX_IN_FLIGHT_TRANSACTIONS = 64;
+
+    //Amount of transactions that can wait for a slot in the in-flight window, per slot
+    private static final int QUEUED_TRANSACTIONS_PER_SLOT = 4;
+
     private Channel currentChannel;
-    private BasicSettingInitializer settingInitializer;
+    private final BasicSettingInitializer settingInitializer;
+
+    //In-flight window, transactions waiting for a slot and worker pool for asynchronous transactions.
+    //Worker pool is created lazily on first async submit.
+    private final int maxInFlightTransactions;
+    private final Semaphore inFlightTransactions;
+    private final BlockingQueue<Runnable> queuedTransactions;
+    private ExecutorService endorsementExecutor;
+
+    //Worker pool for parallel peer queries, created lazily
+    private ExecutorService queryExecutor;
+    private final PeerStatisticsRegistry peerStatistics = new PeerStatisticsRegistry();
+    private final PeerSelector peerSelector = new PeerSelector(peerStatistics);
+    private PeerHealthChecker peerHealthChecker;
+
+    //Tracks commits of asynchronous transactions from block events, created lazily
+    private TransactionCommitTracker commitTracker;
+
+    //Null means proposals go to all peers and all successful endorsements must agree
+    private volatile EndorsementPolicy endorsementPolicy;
 
     public BlockchainConnector() throws ConfigurationException, BlockchainException {
-        initialize();
+        this(DEFAULT_MAX_IN_FLIGHT_TRANSACTIONS);
     }
 
     /**
-     * Initialize this Blockchain connector instance
-     * @throws ConfigurationException
+     * @param maxInFlightTransactions Maximum amount of transactions submitted with {@link #submitTransactionAsync}
+     *                                that can be waiting for endorsement or commit at the same time.
      */
-    private void initialize() throws ConfigurationException, BlockchainException {
-        //Load configs for this client
-        settingInitializer = new BasicSettingInitializer();
+    public BlockchainConnector(int maxInFlightTransactions) throws ConfigurationException, BlockchainException {
+        this(new BasicSettingInitializer(), null, maxInFlightTransactions);
+    }
+
+    /**
+     * Create connector using already initialized settings. Used by {@link BlockchainConnectorPool} so that HFClient
+     * and enrolled users are shared between channels.
+     * @param settingInitializer Initialized settings
+     * @param channelName Channel to join, or null to use channel from organisation configuration.
+     * @param maxInFlightTransactions Maximum amount of transactions submitted with {@link #submitTransactionAsync}
+     *                                that can be waiting for endorsement or commit at the same time.
+     */
+    BlockchainConnector(BasicSettingInitializer settingInitializer, String channelName, int maxInFlightTransactions) throws BlockchainException {
+        if (maxInFlightTransactions < 1) {
+            throw new IllegalArgumentException("maxInFlightTransactions must be positive, was: " + maxInFlightTransactions);
+        }
+        this.maxInFlightTransactions = maxInFlightTransactions;
+        this.inFlightTransactions = new Semaphore(maxInFlightTransactions);
+        this.queuedTransactions = new LinkedBlockingQueue<>(maxInFlightTransactions * QUEUED_TRANSACTIONS_PER_SLOT);
+        this.settingInitializer = settingInitializer;
 
-        joinChannel();
+        if (channelName == null) {
+            channelName = settingInitializer.getConfigReader().getOrganisationConfiguration().channel;
+        }
+        joinChannel(channelName);
+    }
+
+    /**
+     * Create connector for channel that is already joined, without reading settings. Subclasses using this must
+     * override {@link #getUser()} and {@link #getConfig()}. Used to run services against simulated network.
+     * @param channel Joined channel, or null if subclass doesn't use it.
+     * @param maxInFlightTransactions Maximum amount of transactions submitted with {@link #submitTransactionAsync}
+     *                                that can be waiting for endorsement or commit at the same time.
+     */
+    protected BlockchainConnector(Channel channel, int maxInFlightTransactions) {
+        if (maxInFlightTransactions < 1) {
+            throw new IllegalArgumentException("maxInFlightTransactions must be positive, was: " + maxInFlightTransactions);
+        }
+        this.maxInFlightTransactions = maxInFlightTransactions;
+        this.inFlightTransactions = new Semaphore(maxInFlightTransactions);
+        this.queuedTransactions = new LinkedBlockingQueue<>(maxInFlightTransactions * QUEUED_TRANSACTIONS_PER_SLOT);
+        this.settingInitializer = null;
+        this.currentChannel = channel;
     }
 
-    private void joinChannel() throws BlockchainException {
+    private void joinChannel(String channelName) throws BlockchainException {
         // Try to join channel when connector is created.
         try {
             OrganisationConfiguration orgConf = settingInitializer.getConfigReader().getOrganisationConfiguration();
             ChannelManager channelManager = new ChannelManager(orgConf);
-            currentChannel = channelManager.joinChannel(orgConf.channel, settingInitializer.getHFClient(), settingInitializer.getSampleOrg());
+            currentChannel = channelManager.joinChannel(channelName, settingInitializer.getHFClient(), settingInitializer.getSampleOrg());
             logger.debug("Joined channel '" + currentChannel.getName() + "' succesfully");
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
@@ -80,6 +160,28 @@ public class BlockchainConnector {
         }
     }
 
+    /**
+     * Release resources of this connector. Channel is shut down and asynchronous transaction workers are stopped,
+     * so connector can't be used after this.
+     */
+    public synchronized void shutdown() {
+        if (endorsementExecutor != null) {
+            endorsementExecutor.shutdown();
+        }
+        if (queryExecutor != null) {
+            queryExecutor.shutdown();
+        }
+        if (peerHealthChecker != null) {
+            peerHealthChecker.close();
+        }
+        if (commitTracker != null) {
+            commitTracker.close();
+        }
+        if (currentChannel != null) {
+            currentChannel.shutdown(true);
+        }
+    }
+
     public User getUser() {
         return this.settingInitializer.getHFClient().getUserContext();
     }
@@ -96,64 +198,307 @@ public class BlockchainConnector {
     }
 
     /**
-     * Send transaction request to Smart contract and return decoded response as String
+     * Send transaction request to Smart contract and return decoded response as String.
+     * See {@link com.propentus.iot.resilience.ResilientConnector} for retries and circuit breaking.
      * @param request
      * @return
+     * @throws BlockchainException If transaction proposal could not be sent.
      */
     public String doTransaction(TransactionProposalRequest request) throws BlockchainException {
 
         Channel channel = this.getChannel();
         User user = this.getUser();
 
-        LinkedList<ProposalResponse> successful = new LinkedList<>();
-        Collection<ProposalResponse> failed = new LinkedList<>();
-
-        Collection<ProposalResponse> invokePropResp = null;
+        List<Peer> peers = selectEndorsers(channel);
+        List<ProposalResponse> successful;
         try {
-            invokePropResp = this.getChannel().sendTransactionProposal(request);
-        } catch (ProposalException e) {
-            // TODO Auto-generated catch block
+            successful = endorseAndValidate(channel, request, peers);
+        } catch (BlockchainException e) {
             logger.error(e.getMessage(), e);
-        } catch (InvalidArgumentException e) {
-            // TODO Auto-generated catch block
-            logger.error(e.getMessage(), e);
-        }
-
-        for (ProposalResponse response : invokePropResp) {
-            if (response.getStatus() == ChaincodeResponse.Status.SUCCESS) {
-                successful.add(response);
-            } else {
-                failed.add(response);
-            }
+            throw e;
         }
 
         ////////////////////////////
         // Send transaction to orderer and return value
         if (user != null) {
             channel.sendTransaction(successful, user);
-            if(!successful.isEmpty()) {
-                return successful.get(0).getProposalResponse().getResponse().getPayload().toStringUtf8();
-            }
+            return successful.get(0).getProposalResponse().getResponse().getPayload().toStringUtf8();
         }
-        //successful
-        //return channel.sendTransaction(successful);
         return null;
     }
 
+    /**
+     * Send transaction request to Smart contract without blocking the caller. Endorsement is done in background worker,
+     * so proposals of many transactions are endorsed in parallel, and returned future completes only when
+     * the transaction has been committed to the ledger. Commit is detected from block events by
+     * {@link TransactionCommitTracker}, so waiting transactions don't use any threads.
+     *
+     * At most maxInFlightTransactions transactions can be waiting for endorsement or commit at the same time.
+     * When the window is full, transaction is queued and started when one of the earlier transactions completes,
+     * so the caller is never blocked. Queue holds at most 4 * maxInFlightTransactions transactions. When it is full too,
+     * returned future fails immediately, so a producer faster than the network gets backpressure instead of filling
+     * the heap. Callers that don't want to queue at all should use {@link #trySubmitTransactionAsync}.
+     * @param request
+     * @return Future completing with commit information, or exceptionally with BlockchainException if the queue was
+     * full, or endorsement, ordering or validation failed.
+     */
+    public CompletableFuture<TxResult> submitTransactionAsync(TransactionProposalRequest request) {
+
+        CompletableFuture<TxResult> result = new CompletableFuture<>();
+        final long submitTime = System.nanoTime();
+
+        if (queuedTransactions.isEmpty() && inFlightTransactions.tryAcquire()) {
+            startTransaction(request, result, submitTime);
+        } else {
+            if (!queuedTransactions.offer(() -> startTransaction(request, result, submitTime))) {
+                result.completeExceptionally(new BlockchainException("All " + maxInFlightTransactions
+                        + " transaction slots are in use and " + queuedTransactions.size() + " transactions are queued"));
+                return result;
+            }
+            //Slot may have been released before the transaction was queued
+            startQueuedTransactions();
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #submitTransactionAsync(TransactionProposalRequest)}, but if the in-flight window is full,
+     * transaction is not queued and returned future fails immediately. Lets callers shed load instead of queueing it.
+     * @param request
+     * @return Future completing with commit information, or exceptionally with BlockchainException if the window was
+     * full or the transaction failed.
+     */
+    public CompletableFuture<TxResult> trySubmitTransactionAsync(TransactionProposalRequest request) {
+
+        CompletableFuture<TxResult> result = new CompletableFuture<>();
+
+        if (queuedTransactions.isEmpty() && inFlightTransactions.tryAcquire()) {
+            startTransaction(request, result, System.nanoTime());
+        } else {
+            result.completeExceptionally(new BlockchainException("All " + maxInFlightTransactions + " transaction slots are in use"));
+        }
+        return result;
+    }
+
+    /**
+     * Amount of transactions waiting for a free slot in the in-flight window.
+     * @return
+     */
+    public int getQueuedTransactions() {
+        return queuedTransactions.size();
+    }
+
+    /**
+     * Start transaction holding an in-flight slot. Slot is released and next queued transaction started when
+     * the result completes.
+     */
+    private void startTransaction(TransactionProposalRequest request, CompletableFuture<TxResult> result, final long submitTime) {
+
+        result.whenComplete((txResult, throwable) -> {
+            inFlightTransactions.release();
+            startQueuedTransactions();
+        });
+
+        final Channel channel;
+        final User user;
+        try {
+            channel = this.getChannel();
+            user = this.getUser();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(new BlockchainException("Asynchronous transaction failed!", e));
+            return;
+        }
+
+        CompletableFuture
+                .supplyAsync(() -> endorse(channel, request), getEndorsementExecutor())
+                .thenCompose(successful -> {
+                    String transactionID = successful.get(0).getTransactionID();
+                    String payload = successful.get(0).getProposalResponse().getResponse().getPayload().toStringUtf8();
+                    return awaitCommit(channel, user, successful, transactionID).thenApply(commit -> {
+                        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitTime);
+                        return new TxResult(transactionID, payload, commit.isValid(), commit.getValidationCode(), latency);
+                    });
+                })
+                .whenComplete((txResult, throwable) -> {
+                    if (throwable == null) {
+                        logger.debug("Transaction committed: " + txResult);
+                        result.complete(txResult);
+                    } else {
+                        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                        logger.error("Asynchronous transaction failed: " + cause.getMessage(), cause);
+                        result.completeExceptionally(cause instanceof BlockchainException ? cause
+                                : new BlockchainException("Asynchronous transaction failed!", cause));
+                    }
+                });
+    }
+
+    /**
+     * Start queued transactions while there are free slots in the in-flight window.
+     */
+    private void startQueuedTransactions() {
+        while (!queuedTransactions.isEmpty() && inFlightTransactions.tryAcquire()) {
+            Runnable next = queuedTransactions.poll();
+            if (next == null) {
+                //Another thread took it, give the slot back and check again
+                inFlightTransactions.release();
+                continue;
+            }
+            next.run();
+        }
+    }
+
+    /**
+     * Send endorsed transaction to orderer and wait for its commit. Tracking starts before sending, so the block can't
+     * be missed. Result of Channel.sendTransaction completes the commit too, in case block event is not received,
+     * and fails it if ordering fails.
+     */
+    private CompletableFuture<TransactionCommitTracker.Commit> awaitCommit(Channel channel, User user, Collection<ProposalResponse> successful, String transactionID) {
+
+        TransactionCommitTracker tracker = getCommitTracker();
+        CompletableFuture<TransactionCommitTracker.Commit> commit = tracker.track(transactionID);
+
+        channel.sendTransaction(successful, user).whenComplete((event, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                tracker.fail(transactionID, new BlockchainException("Sending transaction to orderer failed!", cause));
+            } else {
+                tracker.complete(transactionID, event.getBlockEvent().getBlockNumber(), event.isValid(), event.getValidationCode());
+            }
+        });
+        return commit;
+    }
+
+    /**
+     * Commit tracker of this connector's channel. Started on first call.
+     * @return
+     */
+    public synchronized TransactionCommitTracker getCommitTracker() {
+        if (commitTracker == null) {
+            commitTracker = new TransactionCommitTracker(this.getChannel());
+            try {
+                commitTracker.start();
+            } catch (BlockchainException e) {
+                //Commits are still completed from results of Channel.sendTransaction
+                logger.warn("Block events are not available, commits are tracked from orderer responses only: " + e.getMessage());
+            }
+        }
+        return commitTracker;
+    }
+
+    /**
+     * Send proposal to endorsing peers and return agreeing endorsements. Called from endorsement workers, so checked
+     * exceptions are wrapped to CompletionException.
+     */
+    private List<ProposalResponse> endorse(Channel channel, TransactionProposalRequest request) {
+
+        List<Peer> peers = selectEndorsers(channel);
+        try {
+            return endorseAndValidate(channel, request, peers);
+        } catch (BlockchainException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Send proposal to given peers and check that endorsements agree before they are sent to orderer.
+     * See {@link EndorsementValidator}.
+     */
+    private List<ProposalResponse> endorseAndValidate(Channel channel, TransactionProposalRequest request, Collection<Peer> peers) throws BlockchainException {
+
+        Collection<ProposalResponse> responses;
+        try {
+            responses = channel.sendTransactionProposal(request, peers);
+        } catch (ProposalException | InvalidArgumentException e) {
+            throw new BlockchainException("Sending transaction proposal failed!", e);
+        }
+        return EndorsementValidator.validate(endorsementPolicy, peers, responses);
+    }
+
+    /**
+     * Select endorsing peers of the channel, skipping peers ejected by failed health checks. With endorsement policy,
+     * best scoring peers are selected until the policy is satisfied, plus one spare healthy peer so that single failing
+     * peer doesn't fail the transaction. If healthy peers can't satisfy the policy, for example all healthy peers are
+     * in same organisation, best scoring ejected peers are selected too. Other peers don't get the proposal, so
+     * transaction doesn't wait for them.
+     */
+    private List<Peer> selectEndorsers(Channel channel) {
+
+        Collection<Peer> endorsingPeers = getEndorsingPeers(channel);
+        if (endorsementPolicy == null) {
+            return peerSelector.selectHealthy(endorsingPeers, Peer::getName);
+        }
+
+        //Healthy peers first, then ejected peers, both best first
+        List<Peer> ranked = peerSelector.select(endorsingPeers, Peer::getName, endorsingPeers.size(), endorsingPeers.size());
+        List<Peer> selected = new ArrayList<>();
+        int next = 0;
+        while (next < ranked.size() && !endorsementPolicy.isSatisfiedBy(selected)) {
+            selected.add(ranked.get(next++));
+        }
+        if (next < ranked.size() && !peerStatistics.get(ranked.get(next).getName()).isEjected()) {
+            selected.add(ranked.get(next));
+        }
+        return selected;
+    }
+
+    /**
+     * Peers of the channel with endorsing role. Other peers, for example event sources, must not get proposals.
+     * @param channel
+     * @return
+     */
+    public static Collection<Peer> getEndorsingPeers(Channel channel) {
+        return channel.getPeers(EnumSet.of(Peer.PeerRole.ENDORSING_PEER));
+    }
+
+    /**
+     * Peers of the channel with chaincode query role.
+     * @param channel
+     * @return
+     */
+    public static Collection<Peer> getQueryPeers(Channel channel) {
+        return channel.getPeers(EnumSet.of(Peer.PeerRole.CHAINCODE_QUERY));
+    }
+
+    private synchronized ExecutorService getEndorsementExecutor() {
+        if (endorsementExecutor == null) {
+            endorsementExecutor = Executors.newFixedThreadPool(maxInFlightTransactions, new DaemonThreadFactory("blockchain-endorsement"));
+        }
+        return endorsementExecutor;
+    }
+
     public String doQuery(QueryByChaincodeRequest request) {
 
+        ByteString payload = doQueryForPayload(request);
+        if (payload == null) {
+            return null;
+        }
+        String responseValue = payload.toStringUtf8();
+        logger.debug("Received query response: " + responseValue);
+        return responseValue;
+    }
+
+    /**
+     * Same as {@link #doQuery(QueryByChaincodeRequest)}, but returns the payload as it was received, without decoding
+     * it to String. Large responses can be parsed straight from {@link ByteString#newInput()}.
+     * @param request
+     * @return Payload of first successful response, or null if query failed or no peer returned successful response.
+     */
+    public ByteString doQueryForPayload(QueryByChaincodeRequest request) {
+
         try {
             Channel channel = this.getChannel();
 
-            Collection<ProposalResponse> responses = currentChannel.queryByChaincode(request);
+            Collection<ProposalResponse> responses = channel.queryByChaincode(request);
 
-            //Got response
-            if(!responses.isEmpty()) {
-                for (ProposalResponse response : responses) {
-                    String responseValue = response.getProposalResponse().getResponse().getPayload().toStringUtf8();
-                    logger.debug("Received query response: " + responseValue);
-                    return responseValue;
+            //Chaincode errors and unreachable peers don't have a payload, so answer of next peer is used instead
+            for (ProposalResponse response : responses) {
+                if (response.getStatus() != ChaincodeResponse.Status.SUCCESS || response.getProposalResponse() == null) {
+                    logger.warn("Query to peer {} failed: {}", response.getPeer().getName(), response.getMessage());
+                    continue;
                 }
+                ByteString payload = response.getProposalResponse().getResponse().getPayload();
+                logger.debug("Received query response of {} bytes", payload.size());
+                return payload;
             }
 
         }
@@ -165,6 +510,92 @@ public class BlockchainConnector {
         return  null;
     }
 
+    /**
+     * Send query in parallel to the best scoring healthy chaincode query peers of the channel, and return as soon as
+     * requiredResponses peers have returned identical successful response. Query is sent to requiredResponses + 1 peers,
+     * so one slow or failing peer doesn't delay the response. If there are not enough healthy peers, best scoring
+     * ejected peers are queried too. Slower peers are cancelled, so response time is set by the fastest
+     * healthy peers instead of the slowest one. Latency and failures of each peer are recorded to {@link #getPeerStatistics()}.
+     * @param request
+     * @param requiredResponses Amount of agreeing responses needed. 1 returns first successful response.
+     * @return Decoded response, or null if not enough peers agreed.
+     */
+    public String doQuery(QueryByChaincodeRequest request, int requiredResponses) {
+
+        try {
+            ParallelQuery query = new ParallelQuery(this.getChannel(), request, requiredResponses, peerStatistics);
+            //Ejected peers are used only if there are not enough healthy peers to get requiredResponses
+            List<Peer> peers = peerSelector.select(getQueryPeers(this.getChannel()), Peer::getName, requiredResponses + 1, requiredResponses);
+            ByteString payload = query.execute(peers, getQueryExecutor(), request.getProposalWaitTime());
+            String responseValue = payload.toStringUtf8();
+            logger.debug("Received query response: " + responseValue);
+            return responseValue;
+        }
+        catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+
+        logger.error("Query received no response!");
+        return null;
+    }
+
+    /**
+     * Latency and error statistics of peers, collected from parallel queries and from ResilientConnector.
+     * @return
+     */
+    public PeerStatisticsRegistry getPeerStatistics() {
+        return peerStatistics;
+    }
+
+    /**
+     * Peer selector routing queries and endorsements of this connector.
+     * @return
+     */
+    public PeerSelector getPeerSelector() {
+        return peerSelector;
+    }
+
+    /**
+     * Start periodic health checks of channel peers with ledger query role. Each check queries blockchain info from
+     * peer, recording its latency and block height. Peers failing health checks are ejected from routing until they
+     * recover.
+     * @param intervalMillis
+     */
+    public synchronized void startPeerHealthChecks(long intervalMillis) {
+        if (peerHealthChecker != null) {
+            return;
+        }
+
+        final Map<String, Peer> peersByName = new HashMap<>();
+        for (Peer peer : this.getChannel().getPeers(EnumSet.of(Peer.PeerRole.LEDGER_QUERY))) {
+            peersByName.put(peer.getName(), peer);
+        }
+
+        peerHealthChecker = new PeerHealthChecker(peersByName.keySet(),
+                peerName -> currentChannel.queryBlockchainInfo(peersByName.get(peerName)).getHeight(), peerStatistics);
+        peerHealthChecker.start(intervalMillis);
+    }
+
+    private synchronized ExecutorService getQueryExecutor() {
+        if (queryExecutor == null) {
+            queryExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("blockchain-query"));
+        }
+        return queryExecutor;
+    }
+
+    /**
+     * Set client-side endorsement policy. When set, transaction proposals are sent only to as many best scoring peers
+     * as the policy needs, and endorsements are accepted as soon as agreeing peers satisfy it.
+     * @param endorsementPolicy Policy, or null to send proposals to all peers and require all endorsements to agree.
+     */
+    public void setEndorsementPolicy(EndorsementPolicy endorsementPolicy) {
+        this.endorsementPolicy = endorsementPolicy;
+    }
+
+    public EndorsementPolicy getEndorsementPolicy() {
+        return endorsementPolicy;
+    }
+
     public OrganisationConfiguration getConfig() {
         return this.settingInitializer.getConfigReader().getOrganisationConfiguration();
     }
@@ -0,0 +1,207 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot;
+
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.common.exception.ConfigurationException;
+import com.propentus.iot.configs.BasicSettingInitializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe registry of BlockchainConnectors keyed by channel name. Configurations are read, users enrolled and
+ * HFClient created only once per pool, and each channel is joined only once, on first lease. After that leases are
+ * handed out without any network round-trips, and all threads share the same HFClient and Channel instances.
+ *
+ * Usage:
+ * <pre>
+ * try (BlockchainConnectorPool.Lease lease = BlockchainConnectorPool.getInstance().lease()) {
+ *     new UBLChaincodeService(lease.getConnector()).addMessage(message);
+ * }
+ * </pre>
+ */
+public class BlockchainConnectorPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockchainConnectorPool.class);
+
+    private static final BlockchainConnectorPool INSTANCE = new BlockchainConnectorPool();
+
+    private final int maxInFlightTransactions;
+    private final ConcurrentMap<String, CompletableFuture<BlockchainConnector>> connectors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> activeLeases = new ConcurrentHashMap<>();
+    private BasicSettingInitializer settingInitializer;
+
+    /**
+     * Lease for pooled connector. Connector stays shared, closing the lease only marks it not used by caller anymore.
+     */
+    public class Lease implements AutoCloseable {
+
+        private final String channelName;
+        private final BlockchainConnector connector;
+        private boolean closed = false;
+
+        private Lease(String channelName, BlockchainConnector connector) {
+            this.channelName = channelName;
+            this.connector = connector;
+        }
+
+        public BlockchainConnector getConnector() {
+            if (closed) {
+                throw new IllegalStateException("Lease for channel '" + channelName + "' is already closed");
+            }
+            return connector;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                AtomicInteger leases = activeLeases.get(channelName);
+                if (leases != null) {
+                    leases.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get shared pool instance.
+     * @return
+     */
+    public static BlockchainConnectorPool getInstance() {
+        return INSTANCE;
+    }
+
+    public BlockchainConnectorPool() {
+        this(BlockchainConnector.DEFAULT_MAX_IN_FLIGHT_TRANSACTIONS);
+    }
+
+    /**
+     * @param maxInFlightTransactions In-flight transaction window of each pooled connector.
+     */
+    public BlockchainConnectorPool(int maxInFlightTransactions) {
+        this.maxInFlightTransactions = maxInFlightTransactions;
+    }
+
+    /**
+     * Lease connector for the channel configured in organisation configuration.
+     * @return
+     * @throws ConfigurationException
+     * @throws BlockchainException
+     */
+    public Lease lease() throws ConfigurationException, BlockchainException {
+        return lease(getSettingInitializer().getConfigReader().getOrganisationConfiguration().channel);
+    }
+
+    /**
+     * Lease connector for given channel. Channel is joined on first call, concurrent callers wait for the same join.
+     * If joining fails, exception is thrown to all waiting callers and next call tries to join again.
+     * @param channelName
+     * @return
+     * @throws ConfigurationException
+     * @throws BlockchainException
+     */
+    public Lease lease(String channelName) throws ConfigurationException, BlockchainException {
+
+        CompletableFuture<BlockchainConnector> connectorFuture = connectors.get(channelName);
+
+        if (connectorFuture == null) {
+            CompletableFuture<BlockchainConnector> newFuture = new CompletableFuture<>();
+            connectorFuture = connectors.putIfAbsent(channelName, newFuture);
+
+            //This thread won, initialize the channel
+            if (connectorFuture == null) {
+                connectorFuture = newFuture;
+                try {
+                    logger.info("Initializing pooled connector for channel '{}'", channelName);
+                    newFuture.complete(new BlockchainConnector(getSettingInitializer(), channelName, maxInFlightTransactions));
+                } catch (ConfigurationException | BlockchainException | RuntimeException e) {
+                    connectors.remove(channelName, newFuture);
+                    newFuture.completeExceptionally(e);
+                }
+            }
+        }
+
+        BlockchainConnector connector;
+        try {
+            connector = connectorFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlockchainException("Interrupted while waiting for channel '" + channelName + "' to initialize", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConfigurationException) {
+                throw (ConfigurationException) cause;
+            }
+            if (cause instanceof BlockchainException) {
+                throw (BlockchainException) cause;
+            }
+            throw new BlockchainException("Initializing channel '" + channelName + "' failed!", cause);
+        }
+
+        activeLeases.computeIfAbsent(channelName, name -> new AtomicInteger()).incrementAndGet();
+        return new Lease(channelName, connector);
+    }
+
+    /**
+     * Amount of leases currently open for given channel.
+     * @param channelName
+     * @return
+     */
+    public int getActiveLeases(String channelName) {
+        AtomicInteger leases = activeLeases.get(channelName);
+        return leases == null ? 0 : leases.get();
+    }
+
+    /**
+     * Shut down all pooled connectors. Leases that are still open become unusable.
+     */
+    public void shutdown() {
+        for (String channelName : connectors.keySet()) {
+            CompletableFuture<BlockchainConnector> connectorFuture = connectors.remove(channelName);
+            if (connectorFuture != null && connectorFuture.isDone() && !connectorFuture.isCompletedExceptionally()) {
+                connectorFuture.join().shutdown();
+            }
+        }
+        activeLeases.clear();
+    }
+
+    private synchronized BasicSettingInitializer getSettingInitializer() throws ConfigurationException {
+        if (settingInitializer == null) {
+            settingInitializer = new BasicSettingInitializer();
+        }
+        return settingInitializer;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot;
+
+import org.hyperledger.fabric.sdk.Peer;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Client-side view of chaincode endorsement policy. Used by {@link EndorsementValidator} to decide when agreeing
+ * endorsements are enough, and by BlockchainConnector to send proposals only to as many peers as are needed.
+ * Policy should match the policy the chaincode was instantiated with, otherwise transactions fail at validation.
+ */
+public interface EndorsementPolicy {
+
+    /**
+     * @param endorsers Peers that returned identical successful endorsement.
+     * @return True if endorsements of these peers satisfy the policy.
+     */
+    boolean isSatisfiedBy(Collection<Peer> endorsers);
+
+    /**
+     * Policy satisfied by any n peers.
+     * @param n
+     * @return
+     */
+    static EndorsementPolicy nOf(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive, was: " + n);
+        }
+        return endorsers -> endorsers.size() >= n;
+    }
+
+    /**
+     * Policy satisfied by peers of any n different organisations.
+     * @param n
+     * @param organisationOf Function returning MSP ID of peer
+     * @return
+     */
+    static EndorsementPolicy nOfOrganisations(int n, Function<Peer, String> organisationOf) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be positive, was: " + n);
+        }
+        return endorsers -> {
+            Set<String> organisations = new HashSet<>();
+            for (Peer endorser : endorsers) {
+                organisations.add(organisationOf.apply(endorser));
+            }
+            return organisations.size() >= n;
+        };
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot;
+
+import com.google.protobuf.ByteString;
+import com.propentus.common.exception.BlockchainException;
+import org.hyperledger.fabric.sdk.ChaincodeResponse;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks that endorsements agree before transaction is sent to orderer. Responses are grouped by their proposal
+ * response payload, which contains the read-write set and chaincode response that endorsers signed. Payloads are
+ * compared as ByteStrings, using their cached hash and byte comparison, so nothing is decoded.
+ *
+ * Responses are checked in order. Validation succeeds as soon as one group of identical endorsements satisfies the
+ * policy, and fails as soon as no group can satisfy it anymore even if all remaining peers agreed with it, so divergent
+ * endorsements are caught before wasting an ordering round.
+ *
+ * Without policy every successful endorsement must be identical, and outcome is decided when all peers have responded.
+ */
+public class EndorsementValidator {
+
+    private static final Logger logger = LoggerFactory.getLogger(EndorsementValidator.class);
+
+    private enum Outcome {
+        PENDING,
+        SATISFIED,
+        FAILED
+    }
+
+    private final EndorsementPolicy policy;
+    private final Set<Peer> pendingPeers;
+
+    private final Map<ByteString, List<ProposalResponse>> responsesByPayload = new LinkedHashMap<>();
+    private Outcome outcome = Outcome.PENDING;
+    private List<ProposalResponse> endorsements;
+    private String failureReason;
+    private String lastError;
+
+    private EndorsementValidator(EndorsementPolicy policy, Collection<Peer> peers) {
+        this.policy = policy;
+        this.pendingPeers = new LinkedHashSet<>(peers);
+    }
+
+    /**
+     * Validate complete set of proposal responses.
+     * @param policy Endorsement policy, or null to require all successful endorsements to agree.
+     * @param peers Peers the proposal was sent to.
+     * @param responses
+     * @return Agreeing endorsements to send to orderer.
+     * @throws BlockchainException If endorsements diverged or didn't satisfy the policy.
+     */
+    public static List<ProposalResponse> validate(EndorsementPolicy policy, Collection<Peer> peers, Collection<ProposalResponse> responses) throws BlockchainException {
+        EndorsementValidator validator = new EndorsementValidator(policy, peers);
+        for (ProposalResponse response : responses) {
+            if (validator.onResponse(response) != Outcome.PENDING) {
+                break;
+            }
+        }
+        return validator.getEndorsements();
+    }
+
+    /**
+     * Add response of one peer.
+     * @param response
+     * @return Outcome after this response. Once outcome is not PENDING, it doesn't change anymore.
+     */
+    private Outcome onResponse(ProposalResponse response) {
+        if (outcome != Outcome.PENDING) {
+            return outcome;
+        }
+        pendingPeers.remove(response.getPeer());
+
+        if (response.getStatus() == ChaincodeResponse.Status.SUCCESS && response.getProposalResponse() != null) {
+            ByteString payload = response.getProposalResponse().getPayload();
+            List<ProposalResponse> group = responsesByPayload.computeIfAbsent(payload, key -> new ArrayList<>());
+            group.add(response);
+            if (responsesByPayload.size() > 1) {
+                logger.warn("Endorsement of peer '{}' differs from earlier endorsements, {} different payloads received",
+                        response.getPeer().getName(), responsesByPayload.size());
+            }
+        } else {
+            lastError = "peer " + response.getPeer().getName() + ": " + response.getMessage();
+            logger.warn("Endorsement failed on " + lastError);
+        }
+
+        evaluate();
+        return outcome;
+    }
+
+    /**
+     * Agreeing endorsements that satisfied the policy.
+     * @return
+     * @throws BlockchainException If outcome is FAILED, or still PENDING because some peers didn't respond.
+     */
+    private List<ProposalResponse> getEndorsements() throws BlockchainException {
+        if (outcome == Outcome.SATISFIED) {
+            return endorsements;
+        }
+        if (outcome == Outcome.FAILED) {
+            throw new BlockchainException(failureReason);
+        }
+        throw new BlockchainException("Endorsement policy is not satisfied, no response from " + pendingPeers.size() + " peers");
+    }
+
+    private void evaluate() {
+        if (policy == null) {
+            evaluateAgreement();
+            return;
+        }
+
+        boolean satisfiable = policy.isSatisfiedBy(pendingPeers);
+        for (List<ProposalResponse> group : responsesByPayload.values()) {
+            Set<Peer> endorsers = peersOf(group);
+            if (policy.isSatisfiedBy(endorsers)) {
+                outcome = Outcome.SATISFIED;
+                endorsements = group;
+                return;
+            }
+            endorsers.addAll(pendingPeers);
+            satisfiable |= policy.isSatisfiedBy(endorsers);
+        }
+
+        if (!satisfiable) {
+            outcome = Outcome.FAILED;
+            failureReason = describeFailure();
+        }
+    }
+
+    private void evaluateAgreement() {
+        if (responsesByPayload.size() > 1) {
+            outcome = Outcome.FAILED;
+            failureReason = describeFailure();
+        } else if (pendingPeers.isEmpty()) {
+            if (responsesByPayload.isEmpty()) {
+                outcome = Outcome.FAILED;
+                failureReason = describeFailure();
+            } else {
+                outcome = Outcome.SATISFIED;
+                endorsements = responsesByPayload.values().iterator().next();
+            }
+        }
+    }
+
+    private String describeFailure() {
+        if (responsesByPayload.size() > 1) {
+            StringBuilder groups = new StringBuilder();
+            for (List<ProposalResponse> group : responsesByPayload.values()) {
+                if (groups.length() > 0) {
+                    groups.append(" / ");
+                }
+                for (Peer peer : peersOf(group)) {
+                    groups.append(peer.getName()).append(' ');
+                }
+            }
+            return "Transaction proposal received " + responsesByPayload.size() + " different endorsements: " + groups.toString().trim();
+        }
+        if (responsesByPayload.isEmpty()) {
+            return "Transaction proposal received no successful endorsements!" + (lastError != null ? " Last error from " + lastError : "");
+        }
+        return "Endorsements don't satisfy endorsement policy!" + (lastError != null ? " Last error from " + lastError : "");
+    }
+
+    private static Set<Peer> peersOf(List<ProposalResponse> responses) {
+        Set<Peer> peers = new LinkedHashSet<>();
+        for (ProposalResponse response : responses) {
+            peers.add(response.getPeer());
+        }
+        return peers;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot;
+
+import com.google.protobuf.ByteString;
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.iot.peer.PeerStatistics;
+import com.propentus.iot.peer.PeerStatisticsRegistry;
+import org.hyperledger.fabric.sdk.ChaincodeResponse;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends single query to several peers in parallel and completes as soon as requiredResponses peers have returned
+ * identical payload. Queries still running after that are cancelled and their results ignored, so latency of the
+ * query is set by the fastest healthy peers. Latency and failures of each peer are recorded to PeerStatisticsRegistry.
+ */
+class ParallelQuery {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelQuery.class);
+
+    private final Channel channel;
+    private final QueryByChaincodeRequest request;
+    private final int requiredResponses;
+    private final PeerStatisticsRegistry statistics;
+
+    private final CompletableFuture<ByteString> result = new CompletableFuture<>();
+
+    //Guarded by this
+    private final Map<ByteString, Integer> agreeingResponses = new HashMap<>();
+    private int finishedPeers = 0;
+    private int peerCount = 0;
+
+    ParallelQuery(Channel channel, QueryByChaincodeRequest request, int requiredResponses, PeerStatisticsRegistry statistics) {
+        this.channel = channel;
+        this.request = request;
+        this.requiredResponses = requiredResponses;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Send query to given peers and wait for the first requiredResponses agreeing responses.
+     * @param peers
+     * @param executor Executor running the peer queries
+     * @param timeoutMillis Maximum time to wait for agreeing responses
+     * @return Payload returned by agreeing peers
+     * @throws BlockchainException If not enough peers agreed before all peers responded or timeout elapsed
+     */
+    ByteString execute(Collection<Peer> peers, ExecutorService executor, long timeoutMillis) throws BlockchainException {
+
+        if (requiredResponses < 1 || requiredResponses > peers.size()) {
+            throw new IllegalArgumentException("Query requires " + requiredResponses + " responses, but channel has " + peers.size() + " peers");
+        }
+
+        synchronized (this) {
+            peerCount = peers.size();
+        }
+
+        List<Future<?>> queries = new ArrayList<>(peers.size());
+        try {
+            for (Peer peer : peers) {
+                queries.add(executor.submit(() -> queryPeer(peer)));
+            }
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlockchainException("Interrupted while waiting for query responses", e);
+        } catch (TimeoutException e) {
+            throw new BlockchainException("Query did not receive " + requiredResponses + " agreeing responses in " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            throw new BlockchainException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            //Stragglers are not needed anymore
+            result.cancel(false);
+            for (Future<?> query : queries) {
+                query.cancel(true);
+            }
+        }
+    }
+
+    private void queryPeer(Peer peer) {
+
+        PeerStatistics peerStatistics = statistics.get(peer.getName());
+        long startTime = System.nanoTime();
+        ByteString payload = null;
+
+        try {
+            Collection<ProposalResponse> responses = channel.queryByChaincode(request, Collections.singletonList(peer));
+            for (ProposalResponse response : responses) {
+                if (response.getStatus() == ChaincodeResponse.Status.SUCCESS) {
+                    payload = response.getProposalResponse().getResponse().getPayload();
+                } else {
+                    logger.warn("Peer '{}' returned failed query response: {}", peer.getName(), response.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            if (!result.isDone()) {
+                logger.warn("Query to peer '" + peer.getName() + "' failed: " + e.getMessage(), e);
+            }
+        }
+
+        if (payload != null) {
+            peerStatistics.recordSuccess(System.nanoTime() - startTime);
+        } else if (!result.isDone()) {
+            //Failures caused by cancelling stragglers are not peer's fault
+            peerStatistics.recordFailure();
+        }
+
+        onPeerFinished(peer, payload);
+    }
+
+    private synchronized void onPeerFinished(Peer peer, ByteString payload) {
+        finishedPeers++;
+
+        if (payload != null) {
+            int agreeing = agreeingResponses.merge(payload, 1, Integer::sum);
+            if (agreeing >= requiredResponses && result.complete(payload)) {
+                logger.debug("Query completed by peer '{}' after {}/{} peers responded", peer.getName(), finishedPeers, peerCount);
+            }
+        }
+
+        if (finishedPeers == peerCount && !result.isDone()) {
+            result.completeExceptionally(new BlockchainException("Query received " + agreeingResponses.size()
+                    + " different successful responses from " + peerCount + " peers, but " + requiredResponses + " agreeing responses were required"));
+        }
+    }
+}
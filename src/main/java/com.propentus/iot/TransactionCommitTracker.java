@@ -0,0 +1,269 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot;
+
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.BlockListener;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks commits of transactions from the block events of channel's event hubs. Each tracked transaction gets a future,
+ * which completes when a block containing the transaction arrives, with validation code and commit latency.
+ * Waiting doesn't need a thread per transaction: one block listener completes all futures, and timeouts are handled
+ * by a single scheduler thread.
+ *
+ * Transaction must be tracked before it is sent to orderer, otherwise its block may arrive before tracking starts.
+ */
+public class TransactionCommitTracker implements BlockListener, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionCommitTracker.class);
+
+    public static final long DEFAULT_COMMIT_TIMEOUT_MILLIS = 120000;
+
+    /**
+     * Commit of single transaction.
+     */
+    public static class Commit {
+
+        private final String transactionID;
+        private final long blockNumber;
+        private final boolean valid;
+        private final byte validationCode;
+        private final long latencyMillis;
+
+        Commit(String transactionID, long blockNumber, boolean valid, byte validationCode, long latencyMillis) {
+            this.transactionID = transactionID;
+            this.blockNumber = blockNumber;
+            this.valid = valid;
+            this.validationCode = validationCode;
+            this.latencyMillis = latencyMillis;
+        }
+
+        public String getTransactionID() {
+            return transactionID;
+        }
+
+        public long getBlockNumber() {
+            return blockNumber;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * Fabric validation code of the transaction. 0 means VALID.
+         * @return
+         */
+        public byte getValidationCode() {
+            return validationCode;
+        }
+
+        /**
+         * Time from start of tracking to commit in milliseconds.
+         * @return
+         */
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+    }
+
+    private static class PendingCommit {
+        final CompletableFuture<Commit> future = new CompletableFuture<>();
+        final long startTime = System.nanoTime();
+        private ScheduledFuture<?> timeout;
+
+        //Commit can arrive before timeout is set, in that case timeout is cancelled right away
+        synchronized void setTimeout(ScheduledFuture<?> timeout) {
+            this.timeout = timeout;
+            if (future.isDone()) {
+                timeout.cancel(false);
+            }
+        }
+
+        synchronized void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    private final Channel channel;
+    private final long defaultTimeoutMillis;
+    private final ConcurrentMap<String, PendingCommit> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timeoutScheduler;
+    private String listenerHandle;
+
+    public TransactionCommitTracker(Channel channel) {
+        this(channel, DEFAULT_COMMIT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param channel Channel, which has event hubs added by {@link ChannelManager}
+     * @param defaultTimeoutMillis How long to wait for commit, when no timeout is given to {@link #track(String)}
+     */
+    public TransactionCommitTracker(Channel channel, long defaultTimeoutMillis) {
+        this.channel = channel;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("commit-tracker-timeout"));
+    }
+
+    /**
+     * Start receiving block events of the channel.
+     * @throws BlockchainException
+     */
+    public synchronized void start() throws BlockchainException {
+        if (listenerHandle != null) {
+            return;
+        }
+        try {
+            listenerHandle = channel.registerBlockListener(this);
+            logger.debug("Started tracking commits on channel '{}'", channel.getName());
+        } catch (InvalidArgumentException e) {
+            throw new BlockchainException("Registering block listener failed!", e);
+        }
+    }
+
+    /**
+     * Start tracking commit of transaction with default timeout.
+     * @param transactionID
+     * @return Future completing when transaction is committed, or exceptionally with TimeoutException.
+     */
+    public CompletableFuture<Commit> track(String transactionID) {
+        return track(transactionID, defaultTimeoutMillis);
+    }
+
+    /**
+     * Start tracking commit of transaction. If the transaction is already tracked, returns the existing future.
+     * @param transactionID
+     * @param timeoutMillis
+     * @return Future completing when transaction is committed, or exceptionally with TimeoutException.
+     */
+    public CompletableFuture<Commit> track(String transactionID, long timeoutMillis) {
+        PendingCommit commit = new PendingCommit();
+        PendingCommit existing = pending.putIfAbsent(transactionID, commit);
+        if (existing != null) {
+            return existing.future;
+        }
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+            //Remove only this commit, transaction may have been tracked again after this one completed
+            if (pending.remove(transactionID, commit)) {
+                commit.future.completeExceptionally(
+                        new TimeoutException("Transaction " + transactionID + " was not committed in " + timeoutMillis + " ms"));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        commit.setTimeout(timeout);
+        return commit.future;
+    }
+
+    /**
+     * Complete tracked transaction from commit event received from other source, e.g. future of Channel.sendTransaction.
+     * Does nothing if the transaction is not tracked anymore.
+     * @param transactionID
+     * @param blockNumber
+     * @param valid
+     * @param validationCode
+     */
+    public void complete(String transactionID, long blockNumber, boolean valid, byte validationCode) {
+        PendingCommit commit = pending.remove(transactionID);
+        if (commit != null) {
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - commit.startTime);
+            commit.future.complete(new Commit(transactionID, blockNumber, valid, validationCode, latency));
+            commit.cancelTimeout();
+        }
+    }
+
+    /**
+     * Stop tracking transaction and complete its future exceptionally, e.g. when sending it to orderer failed.
+     * @param transactionID
+     * @param cause
+     */
+    public void fail(String transactionID, Throwable cause) {
+        PendingCommit commit = pending.remove(transactionID);
+        if (commit != null) {
+            commit.future.completeExceptionally(cause);
+            commit.cancelTimeout();
+        }
+    }
+
+    /**
+     * Amount of transactions waiting for commit.
+     * @return
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void received(BlockEvent blockEvent) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long blockNumber = blockEvent.getBlockNumber();
+        //Same block is received from every event hub, only the first one completes the transactions
+        for (BlockInfo.EnvelopeInfo envelope : blockEvent.getEnvelopeInfos()) {
+            complete(envelope.getTransactionID(), blockNumber, envelope.isValid(), envelope.getValidationCode());
+        }
+    }
+
+    /**
+     * Stop receiving block events. Transactions still waiting for commit are completed exceptionally.
+     */
+    @Override
+    public synchronized void close() {
+        if (listenerHandle != null) {
+            try {
+                channel.unregisterBlockListener(listenerHandle);
+            } catch (InvalidArgumentException e) {
+                logger.warn("Unregistering block listener failed: " + e.getMessage());
+            }
+            listenerHandle = null;
+        }
+        for (Map.Entry<String, PendingCommit> entry : pending.entrySet()) {
+            fail(entry.getKey(), new BlockchainException("Commit tracker was closed before transaction was committed"));
+        }
+        timeoutScheduler.shutdownNow();
+    }
+}
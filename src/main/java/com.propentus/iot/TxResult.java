@@ -0,0 +1,88 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot;
+
+/**
+ * Result of transaction submitted with {@link BlockchainConnector#submitTransactionAsync}. Result is created only after
+ * the transaction has been committed to the ledger, so it contains both the endorsement payload and commit information.
+ */
+public class TxResult {
+
+    private final String transactionID;
+    private final String payload;
+    private final boolean valid;
+    private final byte validationCode;
+    private final long latencyMillis;
+
+    public TxResult(String transactionID, String payload, boolean valid, byte validationCode, long latencyMillis) {
+        this.transactionID = transactionID;
+        this.payload = payload;
+        this.valid = valid;
+        this.validationCode = validationCode;
+        this.latencyMillis = latencyMillis;
+    }
+
+    public String getTransactionID() {
+        return transactionID;
+    }
+
+    /**
+     * Payload returned by smart contract in endorsement, decoded as UTF-8 String.
+     * @return
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Fabric validation code of the committed transaction. 0 means VALID.
+     * @return
+     */
+    public byte getValidationCode() {
+        return validationCode;
+    }
+
+    /**
+     * Time from submit to commit in milliseconds.
+     * @return
+     */
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "TxResult{transactionID='" + transactionID + "', valid=" + valid + ", validationCode=" + validationCode
+                + ", latencyMillis=" + latencyMillis + "}";
+    }
+}
@@ -28,12 +28,27 @@
 
 package com.propentus.iot.chaincode;
 
+import com.google.protobuf.ByteString;
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.common.util.EntityUtil;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
 import com.propentus.iot.BlockchainConnector;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Abstract class for chaincode services.
@@ -46,6 +61,12 @@ public class AbstractChaincodeService {
     protected ChaincodeRequestFactory requestFactory;
 
     private static final String CHAIN_CODE_METHOD_GET_KEYS = "getKeys";
+    private static final String CHAIN_CODE_METHOD_GET_KEYS_PAGED = "getKeysPaged";
+
+    public static final int DEFAULT_KEY_PAGE_SIZE = 1000;
+
+    //Shared by all services, next pages of key iterators are read here
+    private static volatile ExecutorService prefetchExecutor;
 
     public AbstractChaincodeService(BlockchainConnector connector, ChaincodeRequestFactory requestFactory) {
         this.connector = connector;
@@ -75,4 +96,135 @@ public class AbstractChaincodeService {
         return null;
     }
 
+    /**
+     * Get one page of keys in given range. Calls function "getKeysPaged" on smart contract. Argument order:
+     * 1. Start key, inclusive. Empty for open start.
+     * 2. End key, exclusive. Empty for open end.
+     * 3. Page size
+     * 4. Bookmark returned with previous page, empty for first page.
+     * @param range
+     * @param pageSize
+     * @param bookmark Bookmark of previous page, or null for first page.
+     * @return
+     * @throws BlockchainException If query failed.
+     */
+    public KeyPage getKeys(KeyRange range, int pageSize, String bookmark) throws BlockchainException {
+
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive, was: " + pageSize);
+        }
+
+        logger.debug("Calling Smart contract method:" + CHAIN_CODE_METHOD_GET_KEYS_PAGED + " with " + range + ", bookmark: " + bookmark);
+
+        ArrayList<String> args = new ArrayList<String>();
+        args.add(range.getStartKey());
+        args.add(range.getEndKey());
+        args.add(Integer.toString(pageSize));
+        args.add(bookmark == null ? "" : bookmark);
+        QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_KEYS_PAGED, args);
+
+        ByteString response = this.connector.doQueryForPayload(request);
+        if (response == null) {
+            throw new BlockchainException("Query '" + CHAIN_CODE_METHOD_GET_KEYS_PAGED + "' received no response");
+        }
+        if (response.isEmpty()) {
+            return new KeyPage(Collections.<String>emptyList(), null);
+        }
+
+        try (Reader reader = new InputStreamReader(response.newInput(), StandardCharsets.UTF_8)) {
+            return EntityUtil.JsonToObject(reader, KeyPage.class);
+        }
+        catch (IOException | RuntimeException e) {
+            throw new BlockchainException("Could not parse response of '" + CHAIN_CODE_METHOD_GET_KEYS_PAGED + "'", e);
+        }
+    }
+
+    /**
+     * Iterate all keys with default page size, see {@link #iterateKeys(KeyRange, int)}.
+     * @param range
+     * @return
+     */
+    public Iterator<String> iterateKeys(KeyRange range) {
+        return iterateKeys(range, DEFAULT_KEY_PAGE_SIZE);
+    }
+
+    /**
+     * Iterate keys in given range page by page. Only one page is held in memory at a time, and the next page is
+     * read in background while the current one is iterated. Iterator throws IllegalStateException if reading
+     * a page fails.
+     * @param range
+     * @param pageSize
+     * @return
+     */
+    public Iterator<String> iterateKeys(KeyRange range, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive, was: " + pageSize);
+        }
+        return new PagedKeyIterator(range, pageSize);
+    }
+
+    private CompletableFuture<KeyPage> getKeysAsync(KeyRange range, int pageSize, String bookmark) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getKeys(range, pageSize, bookmark);
+            }
+            catch (BlockchainException e) {
+                throw new CompletionException(e);
+            }
+        }, getPrefetchExecutor());
+    }
+
+    private static ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            synchronized (AbstractChaincodeService.class) {
+                if (prefetchExecutor == null) {
+                    prefetchExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("chaincode-key-prefetch"));
+                }
+            }
+        }
+        return prefetchExecutor;
+    }
+
+    private class PagedKeyIterator implements Iterator<String> {
+
+        private final KeyRange range;
+        private final int pageSize;
+        private Iterator<String> currentPage = Collections.emptyIterator();
+        private CompletableFuture<KeyPage> nextPage;
+
+        PagedKeyIterator(KeyRange range, int pageSize) {
+            this.range = range;
+            this.pageSize = pageSize;
+            this.nextPage = getKeysAsync(range, pageSize, null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!currentPage.hasNext()) {
+                if (nextPage == null) {
+                    return false;
+                }
+                KeyPage page;
+                try {
+                    page = nextPage.join();
+                }
+                catch (CompletionException e) {
+                    nextPage = null;
+                    throw new IllegalStateException("Reading keys failed: " + e.getCause().getMessage(), e.getCause());
+                }
+                //Start reading the next page before caller processes this one
+                nextPage = page.isLast(pageSize) ? null : getKeysAsync(range, pageSize, page.getBookmark());
+                currentPage = page.getKeys().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentPage.next();
+        }
+    }
 }
@@ -34,21 +34,32 @@ import org.hyperledger.fabric.sdk.ChaincodeID;
 import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
 import org.hyperledger.fabric.sdk.TransactionProposalRequest;
 import org.hyperledger.fabric.sdk.User;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Map;
 
 public class ChaincodeRequestFactory {
 
 	private static final Log logger = LogFactory.getLog(ChaincodeRequestFactory.class);
 
+    private static final long PROPOSAL_WAIT_TIME = 120000;
+
     private String chaincodeName;
     private String chaincodePath;
     private String chaincodeVersion;
 
+    //ChaincodeID is immutable, so same instance is used for all requests
+    private final ChaincodeID chaincodeID;
+
     public ChaincodeRequestFactory(String chaincodeName, String chaincodePath, String chaincodeVersion) {
         this.chaincodeName = chaincodeName;
         this.chaincodePath = chaincodePath;
         this.chaincodeVersion = chaincodeVersion;
+        this.chaincodeID = ChaincodeID.newBuilder().setName(this.chaincodeName)
+                .setVersion(this.chaincodeVersion)
+                .setPath(this.chaincodePath).build();
     }
 
     public QueryByChaincodeRequest createQuery(User user, String function, ArrayList<String> args) {
@@ -57,9 +68,6 @@ public class ChaincodeRequestFactory {
         //////////////////////////
 
         //Set chaincodeID
-        ChaincodeID chaincodeID = ChaincodeID.newBuilder().setName(this.chaincodeName)
-                .setVersion(this.chaincodeVersion)
-                .setPath(this.chaincodePath).build();
         request.setChaincodeID(chaincodeID);
 
         //Set function to be called on Smart-Contract
@@ -71,19 +79,31 @@ public class ChaincodeRequestFactory {
         return request;
     }
 
+    /**
+     * Create query with binary arguments. Arguments are passed to SDK as they are, without String conversions.
+     * @param user
+     * @param function
+     * @param args
+     * @return
+     */
+    public QueryByChaincodeRequest createQuery(User user, String function, byte[][] args) {
+        QueryByChaincodeRequest request = QueryByChaincodeRequest.newInstance(user);
+        request.setChaincodeID(chaincodeID);
+        request.setFcn(function);
+        request.setArgBytes(args);
+        return request;
+    }
+
     public TransactionProposalRequest createTransaction(User user, String function, ArrayList<String> args) {
 
         TransactionProposalRequest request = TransactionProposalRequest.newInstance(user);
 
         //Set chaincodeID
-        ChaincodeID chaincodeID = ChaincodeID.newBuilder().setName(this.chaincodeName)
-                .setVersion(this.chaincodeVersion)
-                .setPath(this.chaincodePath).build();
         request.setChaincodeID(chaincodeID);
 
         request.setFcn(function);
         request.setArgs(args);
-        request.setProposalWaitTime(120000);
+        request.setProposalWaitTime(PROPOSAL_WAIT_TIME);
         request.setUserContext(user);
 
         logger.debug("Created transaction proposal");
@@ -92,4 +112,85 @@ public class ChaincodeRequestFactory {
         return request;
     }
 
+    /**
+     * Create transaction with binary arguments. Arguments are passed to SDK as they are, so the only copy of them
+     * is made when SDK builds the proposal.
+     * @param user
+     * @param function
+     * @param args
+     * @return
+     */
+    public TransactionProposalRequest createTransaction(User user, String function, byte[][] args) {
+        return createTransaction(user, function, args, null);
+    }
+
+    /**
+     * Create transaction with binary arguments and transient data. Transient data is passed to chaincode,
+     * but it is not written to the ledger.
+     * @param user
+     * @param function
+     * @param args
+     * @param transientMap Transient data, or null if there is none.
+     * @return
+     */
+    public TransactionProposalRequest createTransaction(User user, String function, byte[][] args, Map<String, byte[]> transientMap) {
+
+        TransactionProposalRequest request = TransactionProposalRequest.newInstance(user);
+        request.setChaincodeID(chaincodeID);
+        request.setFcn(function);
+        request.setArgBytes(args);
+        setTransientMap(request, transientMap);
+        request.setProposalWaitTime(PROPOSAL_WAIT_TIME);
+        request.setUserContext(user);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Created transaction proposal");
+            logger.debug("Function: " + function + ", Arg sizes:" + argSizes(args));
+        }
+
+        return request;
+    }
+
+    /**
+     * Convert ByteBuffers to chaincode arguments. Heap buffers covering their whole backing array are used without
+     * copying, other buffers are copied once. Positions of the buffers are not changed.
+     * @param args
+     * @return
+     */
+    public static byte[][] toArgs(ByteBuffer... args) {
+        byte[][] argBytes = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            ByteBuffer arg = args[i];
+            if (arg.hasArray() && arg.arrayOffset() == 0 && arg.position() == 0 && arg.remaining() == arg.array().length) {
+                argBytes[i] = arg.array();
+            } else {
+                argBytes[i] = new byte[arg.remaining()];
+                arg.duplicate().get(argBytes[i]);
+            }
+        }
+        return argBytes;
+    }
+
+    private static void setTransientMap(TransactionProposalRequest request, Map<String, byte[]> transientMap) {
+        if (transientMap == null || transientMap.isEmpty()) {
+            return;
+        }
+        try {
+            request.setTransientMap(transientMap);
+        } catch (InvalidArgumentException e) {
+            throw new IllegalArgumentException("Invalid transient map: " + e.getMessage(), e);
+        }
+    }
+
+    private static String argSizes(byte[][] args) {
+        StringBuilder sizes = new StringBuilder("[");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                sizes.append(", ");
+            }
+            sizes.append(args[i].length);
+        }
+        return sizes.append("]").toString();
+    }
+
 }
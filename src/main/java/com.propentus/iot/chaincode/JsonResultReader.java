@@ -0,0 +1,173 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.protobuf.ByteString;
+import com.propentus.common.util.EntityUtil;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads objects from chaincode query response one at a time, parsing straight from the response payload.
+ * Response is never copied to String, so only the object being read is in memory in addition to the payload.
+ *
+ * Response can be a JSON array of objects, a single object, which is read as array of one object, or empty.
+ * With {@link #forArrayField(ByteString, String, Class)} the array is read from a field of the response object.
+ */
+public class JsonResultReader<T> implements Iterator<T>, Closeable {
+
+    private final JsonReader reader;
+    private final Class<T> type;
+    private boolean array;
+    private boolean finished;
+
+    private JsonResultReader(ByteString payload, Class<T> type) {
+        this.reader = new JsonReader(new InputStreamReader(payload.newInput(), StandardCharsets.UTF_8));
+        this.reader.setLenient(true);
+        this.type = type;
+    }
+
+    /**
+     * Read objects from response, which is either array of objects or single object.
+     * @param payload
+     * @param type
+     * @return
+     * @throws IOException If response is not valid JSON.
+     */
+    public static <T> JsonResultReader<T> forPayload(ByteString payload, Class<T> type) throws IOException {
+        JsonResultReader<T> resultReader = new JsonResultReader<T>(payload, type);
+        resultReader.start();
+        return resultReader;
+    }
+
+    /**
+     * Read objects from array in given field of response object, e.g. "organisations" from {"organisations": [...]}.
+     * Other fields of the response are skipped.
+     * @param payload
+     * @param fieldName
+     * @param type
+     * @return
+     * @throws IOException If response is not valid JSON.
+     */
+    public static <T> JsonResultReader<T> forArrayField(ByteString payload, String fieldName, Class<T> type) throws IOException {
+        JsonResultReader<T> resultReader = new JsonResultReader<T>(payload, type);
+        if (resultReader.peek() == JsonToken.BEGIN_OBJECT) {
+            resultReader.reader.beginObject();
+            while (resultReader.reader.hasNext()) {
+                if (fieldName.equals(resultReader.reader.nextName())) {
+                    resultReader.start();
+                    return resultReader;
+                }
+                resultReader.reader.skipValue();
+            }
+        }
+        resultReader.finished = true;
+        return resultReader;
+    }
+
+    /**
+     * Read all remaining objects to list.
+     * @return
+     */
+    public List<T> toList() {
+        List<T> list = new ArrayList<T>();
+        while (hasNext()) {
+            list.add(next());
+        }
+        return list;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (finished) {
+            return false;
+        }
+        try {
+            if (array && reader.hasNext()) {
+                return true;
+            }
+            if (!array && reader.peek() != JsonToken.END_DOCUMENT) {
+                return true;
+            }
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        }
+        finished = true;
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T value = EntityUtil.JsonToObject(reader, type);
+        if (!array) {
+            //Single object response has only one element
+            finished = true;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        reader.close();
+    }
+
+    private void start() throws IOException {
+        JsonToken token = peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            array = true;
+        } else if (token == JsonToken.END_DOCUMENT || token == JsonToken.NULL) {
+            finished = true;
+        }
+    }
+
+    private JsonToken peek() throws IOException {
+        try {
+            return reader.peek();
+        } catch (EOFException e) {
+            //Empty or whitespace only response
+            return JsonToken.END_DOCUMENT;
+        }
+    }
+}
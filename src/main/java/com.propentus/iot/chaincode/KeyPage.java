@@ -0,0 +1,70 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of keys returned by {@link AbstractChaincodeService#getKeys(KeyRange, int, String)}.
+ * Parsed from smart contract response of format {"keys": [...], "bookmark": "..."}.
+ */
+public class KeyPage {
+
+    private List<String> keys;
+    private String bookmark;
+
+    KeyPage() {
+    }
+
+    KeyPage(List<String> keys, String bookmark) {
+        this.keys = keys;
+        this.bookmark = bookmark;
+    }
+
+    public List<String> getKeys() {
+        return keys == null ? Collections.<String>emptyList() : keys;
+    }
+
+    /**
+     * Bookmark to pass when reading the next page. Null or empty if this is the last page.
+     * @return
+     */
+    public String getBookmark() {
+        return bookmark;
+    }
+
+    /**
+     * @param pageSize Page size the page was requested with.
+     * @return True if there are no more keys after this page.
+     */
+    public boolean isLast(int pageSize) {
+        return bookmark == null || bookmark.isEmpty() || getKeys().size() < pageSize;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode;
+
+/**
+ * Range of ledger keys for paginated key listing, see {@link AbstractChaincodeService#getKeys(KeyRange, int, String)}.
+ * Start key is inclusive and end key exclusive, like in Fabric range queries. Empty start or end key means the range
+ * is open from that end.
+ */
+public class KeyRange {
+
+    private static final KeyRange ALL = new KeyRange("", "");
+
+    private final String startKey;
+    private final String endKey;
+
+    private KeyRange(String startKey, String endKey) {
+        this.startKey = startKey;
+        this.endKey = endKey;
+    }
+
+    /**
+     * Range covering all keys.
+     * @return
+     */
+    public static KeyRange all() {
+        return ALL;
+    }
+
+    /**
+     * Keys from startKey (inclusive) to endKey (exclusive). Null means open-ended.
+     * @param startKey
+     * @param endKey
+     * @return
+     */
+    public static KeyRange between(String startKey, String endKey) {
+        return new KeyRange(startKey == null ? "" : startKey, endKey == null ? "" : endKey);
+    }
+
+    /**
+     * Keys starting with given prefix.
+     * @param prefix
+     * @return
+     */
+    public static KeyRange withPrefix(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return ALL;
+        }
+        //First key after all keys with the prefix is the prefix with its last character incremented
+        char last = prefix.charAt(prefix.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            return new KeyRange(prefix, "");
+        }
+        return new KeyRange(prefix, prefix.substring(0, prefix.length() - 1) + (char) (last + 1));
+    }
+
+    /**
+     * Keys of messages written by given organisation. Generated keys are formatted as MSPID_timestamp_random.
+     * @param mspId
+     * @return
+     */
+    public static KeyRange forMSP(String mspId) {
+        return withPrefix(mspId + "_");
+    }
+
+    public String getStartKey() {
+        return startKey;
+    }
+
+    public String getEndKey() {
+        return endKey;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyRange{startKey='" + startKey + "', endKey='" + endKey + "'}";
+    }
+}
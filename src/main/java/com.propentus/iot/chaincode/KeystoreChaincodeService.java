@@ -29,8 +29,11 @@
 package com.propentus.iot.chaincode;
 
 import com.google.gson.reflect.TypeToken;
-import com.propentus.common.util.EntityUtil;
+import com.google.protobuf.ByteString;
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.common.util.cache.LoadingCache;
 import com.propentus.iot.BlockchainConnector;
+import com.propentus.iot.TxResult;
 import com.propentus.iot.chaincode.model.OrganisationChaincodeTO;
 import com.propentus.iot.chaincode.model.OrganisationsChaincodeTO;
 import org.apache.commons.logging.Log;
@@ -41,9 +44,15 @@ import org.hyperledger.fabric.sdk.TransactionProposalRequest;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * Offers methods for calling Keystore Smart contract
+ * Offers methods for calling Keystore Smart contract.
+ *
+ * Organisations are cached per channel, because their public keys are needed every time message is encrypted,
+ * but they change rarely. Cached organisations are refreshed in background after ORGANISATION_CACHE_TTL_MILLIS,
+ * and invalidated when organisation is added through this service.
  */
 public class KeystoreChaincodeService extends AbstractChaincodeService {
 
@@ -57,6 +66,19 @@ public class KeystoreChaincodeService extends AbstractChaincodeService {
     private static final String CHAIN_CODE_METHOD_ADD_ORGANISATION = "addOrganisation";
     private static final String CHAIN_CODE_METHOD_GET_ORGANISATIONS = "getOrganisations";
 
+    private static final int ORGANISATION_CACHE_MAX_SIZE = 10000;
+    private static final long ORGANISATION_CACHE_TTL_MILLIS = 10 * 60 * 1000;
+    //Time for endorsement and commit of addOrganisation, after which caller stops waiting
+    private static final long ADD_ORGANISATION_TIMEOUT_MILLIS = 4 * 60 * 1000;
+    //Key used for cached getOrganisations result in ORGANISATIONS_CACHE
+    private static final String ALL_ORGANISATIONS_KEY = "*";
+
+    //Shared by all service instances. Keys are '{channel}/{mspID}'
+    private static final LoadingCache<String, OrganisationChaincodeTO> ORGANISATION_CACHE =
+            new LoadingCache<>("keystore-organisation-cache", ORGANISATION_CACHE_MAX_SIZE, ORGANISATION_CACHE_TTL_MILLIS);
+    //Keys are '{channel}/*'
+    private static final LoadingCache<String, OrganisationsChaincodeTO> ORGANISATIONS_CACHE =
+            new LoadingCache<>("keystore-organisations-cache", 100, ORGANISATION_CACHE_TTL_MILLIS);
 
     public KeystoreChaincodeService(BlockchainConnector connector) {
         super(connector, new ChaincodeRequestFactory(CHAIN_CODE_NAME, CHAIN_CODE_PATH, CHAIN_CODE_VERSION));
@@ -66,7 +88,10 @@ public class KeystoreChaincodeService extends AbstractChaincodeService {
      * Call function "addOrganisation" on Keystore Smart contract. Argument order:
      * 1. Organisation MSPID
      * 2. Organisation public key base64 encoded.
+     *
+     * Waits at most ADD_ORGANISATION_TIMEOUT_MILLIS for the transaction to be committed.
      * @param organisation
+     * @return True if transaction was committed as valid. False if it failed, was invalidated or timed out.
      */
     public boolean addOrganisation(OrganisationChaincodeTO organisation) {
 
@@ -80,16 +105,18 @@ public class KeystoreChaincodeService extends AbstractChaincodeService {
         TransactionProposalRequest request = requestFactory.createTransaction(connector.getUser(), CHAIN_CODE_METHOD_ADD_ORGANISATION, args);
 
         try {
-            String response = this.connector.doTransaction(request);
-            logger.debug("Received response:" + response);
-
-            //  If chaincodes are not found, they don't get caught by the Exception
-            //  So we need to check if response is null
-            if (response == null) {
-                return false;
-            }
+            //Wait for commit, so cached organisation is not reloaded from ledger before the new key is there
+            TxResult result = this.connector.submitTransactionAsync(request).get(ADD_ORGANISATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            logger.debug("Received response:" + result.getPayload());
 
-            return true;
+            invalidateCache(organisation.getMspID());
+            return result.isValid();
+        }
+        catch (TimeoutException e) {
+            logger.error("Adding organisation failed", new BlockchainException("Transaction '" + CHAIN_CODE_METHOD_ADD_ORGANISATION
+                    + "' was not committed in " + ADD_ORGANISATION_TIMEOUT_MILLIS + " ms", e));
+            //Transaction may still be committed later, don't keep serving the old key until TTL
+            invalidateCache(organisation.getMspID());
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -101,9 +128,47 @@ public class KeystoreChaincodeService extends AbstractChaincodeService {
     /**
      * Call function "getOrganisation" on Keystore Smart contract. Argument order:
      * 1. Organisation MSPID
+     *
+     * Result is served from cache when available.
      */
     public OrganisationChaincodeTO getOrganisation(String mspID) {
 
+        try {
+            return ORGANISATION_CACHE.get(cacheKey(mspID), key -> queryOrganisation(mspID));
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Call function "getOrganisations" on Keystore Smart contract. Result is served from cache when available,
+     * and it is also used to fill cache of single organisations.
+     */
+    public OrganisationsChaincodeTO getOrganisations() {
+
+        try {
+            return ORGANISATIONS_CACHE.get(cacheKey(ALL_ORGANISATIONS_KEY), key -> queryOrganisations());
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove organisation and organisation list of this service's channel from cache.
+     * @param mspID
+     */
+    public void invalidateCache(String mspID) {
+        ORGANISATION_CACHE.invalidate(cacheKey(mspID));
+        ORGANISATIONS_CACHE.invalidate(cacheKey(ALL_ORGANISATIONS_KEY));
+    }
+
+    private OrganisationChaincodeTO queryOrganisation(String mspID) throws Exception {
+
         logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_GET_ORGANISATION);
 
 
@@ -112,36 +177,54 @@ public class KeystoreChaincodeService extends AbstractChaincodeService {
 
         QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_ORGANISATION, args);
 
-        try {
-            String response = this.connector.doQuery(request);
-            logger.debug("Received response:" + response);
-            OrganisationChaincodeTO organisation = EntityUtil.JsonToObject(response, OrganisationChaincodeTO.class);
-            return organisation;
+        ByteString response = this.connector.doQueryForPayload(request);
+        if (response == null) {
+            //Null means query failed, throw so that stale cached value is kept
+            throw new BlockchainException("Query '" + CHAIN_CODE_METHOD_GET_ORGANISATION + "' received no response");
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        logger.debug("Received response of " + response.size() + " bytes");
+
+        try (JsonResultReader<OrganisationChaincodeTO> organisation = JsonResultReader.forPayload(response, OrganisationChaincodeTO.class)) {
+            return organisation.hasNext() ? organisation.next() : null;
         }
-        return null;
     }
 
-    public OrganisationsChaincodeTO getOrganisations() {
+    private OrganisationsChaincodeTO queryOrganisations() throws Exception {
 
         logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_GET_ORGANISATIONS);
+
+        //Read before querying, so organisations invalidated while the query runs are not written back to cache
+        long organisationGeneration = ORGANISATION_CACHE.getGeneration();
+
         ArrayList<String> args = new ArrayList<String>();
-        QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_ORGANISATION, args);
+        QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_ORGANISATIONS, args);
 
-        try {
-            String response = this.connector.doQuery(request);
-            logger.debug("Received response:" + response);
-            OrganisationsChaincodeTO organisations = EntityUtil.JsonToObject(response, OrganisationsChaincodeTO.class);
-            return organisations;
+        ByteString response = this.connector.doQueryForPayload(request);
+        if (response == null) {
+            throw new BlockchainException("Query '" + CHAIN_CODE_METHOD_GET_ORGANISATIONS + "' received no response");
+        }
+        logger.debug("Received response of " + response.size() + " bytes");
+        if (response.isEmpty()) {
+            return null;
         }
-        catch (Exception e) {
 
-            e.printStackTrace();
+        //Organisations are read one by one from the "organisations" array, without decoding the whole response to String
+        OrganisationsChaincodeTO organisations = new OrganisationsChaincodeTO();
+        organisations.organisations = new ArrayList<OrganisationChaincodeTO>();
+        try (JsonResultReader<OrganisationChaincodeTO> reader = JsonResultReader.forArrayField(response, "organisations", OrganisationChaincodeTO.class)) {
+            while (reader.hasNext()) {
+                OrganisationChaincodeTO organisation = reader.next();
+                if (organisation != null) {
+                    ORGANISATION_CACHE.putIfGeneration(cacheKey(organisation.getMspID()), organisation, organisationGeneration);
+                }
+                organisations.organisations.add(organisation);
+            }
         }
+        return organisations;
+    }
 
-        return null;
+    private String cacheKey(String mspID) {
+        return connector.getChannel().getName() + "/" + mspID;
     }
 
 
@@ -0,0 +1,87 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode;
+
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+
+/**
+ * Result of reading single message with {@link UBLChaincodeService#getMessages(java.util.Collection)}.
+ */
+public class MessageLookupResult {
+
+    public enum Status {
+        FOUND,
+        NOT_FOUND,
+        FAILED
+    }
+
+    private final String key;
+    private final Status status;
+    private final UBLChaincodeTO message;
+    private final Throwable error;
+
+    MessageLookupResult(String key, Status status, UBLChaincodeTO message, Throwable error) {
+        this.key = key;
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+
+    static MessageLookupResult of(String key, UBLChaincodeTO message) {
+        return new MessageLookupResult(key, message != null ? Status.FOUND : Status.NOT_FOUND, message, null);
+    }
+
+    static MessageLookupResult failed(String key, Throwable error) {
+        return new MessageLookupResult(key, Status.FAILED, null, error);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Message, or null if it was not found or reading it failed.
+     * @return
+     */
+    public UBLChaincodeTO getMessage() {
+        return message;
+    }
+
+    /**
+     * Reason of failure, when status is FAILED.
+     * @return
+     */
+    public Throwable getError() {
+        return error;
+    }
+}
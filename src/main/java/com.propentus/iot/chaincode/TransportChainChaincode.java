@@ -28,9 +28,8 @@
 
 package com.propentus.iot.chaincode;
 
+import com.google.protobuf.ByteString;
 import com.propentus.common.exception.BlockchainException;
-import com.propentus.common.util.EntityUtil;
-import com.propentus.common.util.StringUtil;
 import com.propentus.iot.BlockchainConnector;
 import com.propentus.iot.chaincode.model.TransportChaincodeTO;
 import org.slf4j.Logger;
@@ -38,8 +37,10 @@ import org.slf4j.LoggerFactory;
 import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
 import org.hyperledger.fabric.sdk.TransactionProposalRequest;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Offers methods for calling TransportChain Smart contract
@@ -112,40 +113,15 @@ public class TransportChainChaincode extends AbstractChaincodeService {
      */
     public TransportChaincodeTO[] getTransportChain(String chainID) throws BlockchainException {
 
-        logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_GET_TRANSPORT_CHAIN);
-
-
-        ArrayList<String> args = new ArrayList<String>();
-        args.add(chainID);
-
-        QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_TRANSPORT_CHAIN, args);
-
-        try {
-            String response = this.connector.doQuery(request);
-            logger.debug("Received response:" + response);
-
-            if (response == null) {
-                throw new BlockchainException("Error getting connection to blockchain.");
-            }
+        try (JsonResultReader<TransportChaincodeTO> transportChains = readTransportChain(chainID)) {
 
             //  TransportationChain couldn't be found
-            if (response.equals("")) {
+            if (!transportChains.hasNext()) {
                 return null;
             }
 
-
-            if (StringUtil.isEmpty(response)) {
-                return null;
-            }
-
-            // If smart contract returns only one chaincode, it isn't an array, but if multiple
-            // chains are returned those are automatically wrapped to array.
-            if (!response.startsWith("[")) {
-                response = "[" + response + "]";
-            }
-
-            TransportChaincodeTO[] transportChain = EntityUtil.JsonToObject(response, TransportChaincodeTO[].class);
-            return transportChain;
+            List<TransportChaincodeTO> transportChain = transportChains.toList();
+            return transportChain.toArray(new TransportChaincodeTO[transportChain.size()]);
         } catch (BlockchainException be) {
             throw be;
         } catch (Exception e) {
@@ -154,4 +130,39 @@ public class TransportChainChaincode extends AbstractChaincodeService {
         return null;
     }
 
+    /**
+     * Call function "getTransportChain" on TransportChain Smart contract, and read transport chains one at a time
+     * straight from the response. Reader must be closed after use.
+     * Argument order:
+     * 1. TransportChain ID
+     * @param chainID
+     * @return
+     * @throws BlockchainException If query fails or response is not valid JSON.
+     */
+    public JsonResultReader<TransportChaincodeTO> readTransportChain(String chainID) throws BlockchainException {
+
+        logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_GET_TRANSPORT_CHAIN);
+
+
+        ArrayList<String> args = new ArrayList<String>();
+        args.add(chainID);
+
+        QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_TRANSPORT_CHAIN, args);
+
+        ByteString response = this.connector.doQueryForPayload(request);
+
+        if (response == null) {
+            throw new BlockchainException("Error getting connection to blockchain.");
+        }
+        logger.debug("Received response of " + response.size() + " bytes");
+
+        // If smart contract returns only one chaincode, it isn't an array, but if multiple
+        // chains are returned those are automatically wrapped to array. Reader handles both.
+        try {
+            return JsonResultReader.forPayload(response, TransportChaincodeTO.class);
+        } catch (IOException e) {
+            throw new BlockchainException("Invalid response from '" + CHAIN_CODE_METHOD_GET_TRANSPORT_CHAIN + "'", e);
+        }
+    }
+
 }
@@ -0,0 +1,249 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode;
+
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
+import com.propentus.iot.TxResult;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups UBL messages to batches and writes each batch to UBL Smart contract in single "addMessages" transaction.
+ * Batch is sent when it has maxBatchSize messages, when its encoded size reaches maxBatchBytes, or when
+ * lingerMillis has passed since first message was added to it, whichever comes first.
+ *
+ * Messages of one batch are committed atomically, so they all get same transaction ID and status.
+ */
+public class UBLBatchWriter implements AutoCloseable {
+
+    private static final Log logger = LogFactory.getLog(UBLBatchWriter.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 512 * 1024;
+    public static final long DEFAULT_LINGER_MILLIS = 20;
+
+    public enum Status {
+        COMMITTED,
+        FAILED
+    }
+
+    /**
+     * Result of single message written with {@link UBLBatchWriter#write(UBLChaincodeTO)}.
+     */
+    public static class MessageResult {
+
+        private final String key;
+        private final Status status;
+        private final String transactionID;
+        private final Throwable error;
+
+        MessageResult(String key, Status status, String transactionID, Throwable error) {
+            this.key = key;
+            this.status = status;
+            this.transactionID = transactionID;
+            this.error = error;
+        }
+
+        /**
+         * Ledger key of the message. Can be used with {@link UBLChaincodeService#getMessage(String)}.
+         * @return
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * ID of the batch transaction message was written in. Null if batch was not committed.
+         * @return
+         */
+        public String getTransactionID() {
+            return transactionID;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    private static class PendingMessage {
+        final String encodedMessage;
+        final String key;
+        final CompletableFuture<MessageResult> result = new CompletableFuture<>();
+
+        PendingMessage(String encodedMessage, String key) {
+            this.encodedMessage = encodedMessage;
+            this.key = key;
+        }
+    }
+
+    private final UBLChaincodeService service;
+    private final int maxBatchSize;
+    private final int maxBatchBytes;
+    private final long lingerMillis;
+    private final ScheduledExecutorService lingerScheduler;
+
+    //Guarded by this
+    private List<PendingMessage> pending = new ArrayList<>();
+    private int pendingBytes = 0;
+    private ScheduledFuture<?> lingerTask;
+    private boolean closed = false;
+
+    public UBLBatchWriter(UBLChaincodeService service) {
+        this(service, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_BYTES, DEFAULT_LINGER_MILLIS);
+    }
+
+    public UBLBatchWriter(UBLChaincodeService service, int maxBatchSize, int maxBatchBytes, long lingerMillis) {
+        if (maxBatchSize < 1 || maxBatchBytes < 1 || lingerMillis < 0) {
+            throw new IllegalArgumentException("Invalid batch configuration! maxBatchSize: " + maxBatchSize
+                    + ", maxBatchBytes: " + maxBatchBytes + ", lingerMillis: " + lingerMillis);
+        }
+        this.service = service;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerMillis = lingerMillis;
+        this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ubl-batch-linger"));
+    }
+
+    /**
+     * Add message to current batch. Key for the message is generated immediately.
+     * @param message
+     * @return Future completing when the batch containing this message has been committed or has failed.
+     * @throws UnsupportedEncodingException
+     */
+    public CompletableFuture<MessageResult> write(UBLChaincodeTO message) throws UnsupportedEncodingException {
+
+        PendingMessage pendingMessage = new PendingMessage(service.encodeMessage(message), service.generateRandomKey());
+
+        List<PendingMessage> batch = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("UBLBatchWriter is closed");
+            }
+            pending.add(pendingMessage);
+            pendingBytes += pendingMessage.encodedMessage.length() + pendingMessage.key.length();
+
+            if (pending.size() >= maxBatchSize || pendingBytes >= maxBatchBytes) {
+                batch = takePending();
+            } else if (lingerTask == null) {
+                lingerTask = lingerScheduler.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        //Send outside the lock, so that building the request doesn't hold up other writers
+        if (batch != null) {
+            send(batch);
+        }
+        return pendingMessage.result;
+    }
+
+    /**
+     * Send current batch immediately, even if it is not full.
+     */
+    public void flush() {
+        List<PendingMessage> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Flush pending messages and stop linger timer. Already sent batches complete normally.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        lingerScheduler.shutdown();
+    }
+
+    private List<PendingMessage> takePending() {
+        List<PendingMessage> batch = pending;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        return batch;
+    }
+
+    private void send(List<PendingMessage> batch) {
+
+        List<String> messages = new ArrayList<>(batch.size());
+        List<String> keys = new ArrayList<>(batch.size());
+        for (PendingMessage pendingMessage : batch) {
+            messages.add(pendingMessage.encodedMessage);
+            keys.add(pendingMessage.key);
+        }
+
+        logger.debug("Sending batch of " + batch.size() + " UBL messages");
+
+        CompletableFuture<TxResult> transaction;
+        try {
+            transaction = service.addMessagesAsync(messages, keys);
+        } catch (Exception e) {
+            logger.error("Sending UBL message batch failed", e);
+            transaction = new CompletableFuture<>();
+            transaction.completeExceptionally(e);
+        }
+
+        transaction.whenComplete((txResult, throwable) -> {
+            for (PendingMessage pendingMessage : batch) {
+                if (throwable == null && txResult.isValid()) {
+                    pendingMessage.result.complete(new MessageResult(pendingMessage.key, Status.COMMITTED, txResult.getTransactionID(), null));
+                } else {
+                    Throwable error = throwable != null ? throwable
+                            : new BlockchainException("Batch transaction was invalidated with code " + txResult.getValidationCode());
+                    String transactionID = txResult != null ? txResult.getTransactionID() : null;
+                    pendingMessage.result.complete(new MessageResult(pendingMessage.key, Status.FAILED, transactionID, error));
+                }
+            }
+        });
+    }
+}
@@ -28,9 +28,12 @@
 
 package com.propentus.iot.chaincode;
 
+import com.google.protobuf.ByteString;
 import com.propentus.common.exception.BlockchainException;
 import com.propentus.common.util.EntityUtil;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
 import com.propentus.iot.BlockchainConnector;
+import com.propentus.iot.TxResult;
 import com.propentus.iot.chaincode.model.UBLChaincodeTO;
 
 import org.apache.commons.logging.Log;
@@ -38,52 +41,53 @@ import org.apache.commons.logging.LogFactory;
 import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
 import org.hyperledger.fabric.sdk.TransactionProposalRequest;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Offers methods for calling UBL Smart contract
  */
-public class UBLChaincodeService {
+public class UBLChaincodeService extends AbstractChaincodeService {
 
     private static final Log logger = LogFactory.getLog(UBLChaincodeService.class);
 
-    private static final String CHAIN_CODE_NAME = "UBL";
+    public static final String CHAIN_CODE_NAME = "UBL";
     private static final String CHAIN_CODE_PATH = "smartlog_chaincode/UBL";
     private static final String CHAIN_CODE_VERSION = "3.6";
 
-    private static final String CHAIN_CODE_METHOD_GET_KEYS = "getKeys";
     private static final String CHAIN_CODE_METHOD_ADD_MESSAGE = "addMessage";
     private static final String CHAIN_CODE_METHOD_GET_MESSAGE = "getMessage";
+    private static final String CHAIN_CODE_METHOD_ADD_MESSAGES = "addMessages";
+    private static final String CHAIN_CODE_METHOD_GET_MESSAGES = "getMessages";
 
-    private BlockchainConnector connector;
-    private ChaincodeRequestFactory requestFactory;
+    public static final int DEFAULT_GET_MESSAGES_BATCH_SIZE = 100;
+    public static final int DEFAULT_GET_MESSAGES_CONCURRENCY = 4;
 
-    public UBLChaincodeService(BlockchainConnector connector) {
-        this.connector = connector;
-        this.requestFactory = new ChaincodeRequestFactory(CHAIN_CODE_NAME, CHAIN_CODE_PATH, CHAIN_CODE_VERSION);
-    }
+    //How long batches are read one by one after "getMessages" is found to be unsupported, before it is tried again
+    private static final long GET_MESSAGES_UNSUPPORTED_MILLIS = TimeUnit.MINUTES.toMillis(10);
 
-    public String getKeys() {
+    //Channel name -> time until which "getMessages" is not called on that channel
+    private static final ConcurrentMap<String, Long> getMessagesUnsupportedUntil = new ConcurrentHashMap<String, Long>();
 
-        logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_GET_KEYS);
-
-        //Set empty args array
-        ArrayList<String> args = new ArrayList<String>();
-        QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_KEYS, args);
+    //Shared by all services, batches of getMessages calls are queried here
+    private static volatile ExecutorService queryExecutor;
 
-        try {
-            String response = this.connector.doQuery(request);
-            logger.debug("Received response:" + response);
-            return  response;
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
+    public UBLChaincodeService(BlockchainConnector connector) {
+        super(connector, new ChaincodeRequestFactory(CHAIN_CODE_NAME, CHAIN_CODE_PATH, CHAIN_CODE_VERSION));
     }
 
     /**
@@ -95,12 +99,11 @@ public class UBLChaincodeService {
 
         logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_ADD_MESSAGE);
 
-        ArrayList<String> args = new ArrayList<String>();
-        //Convert message object to JSON and base64 encode
-        String json = EntityUtil.ObjectToJson(message);
-        String base64json = Base64.getEncoder().encodeToString(json.getBytes("UTF-8"));
-        args.add(base64json);
-        args.add(generateRandomKey());
+        //Message is passed as bytes, so the base64 payload is not converted to String and back
+        byte[][] args = new byte[][] {
+                encodeMessageBytes(message),
+                generateRandomKey().getBytes(StandardCharsets.UTF_8)
+        };
 
         TransactionProposalRequest request = requestFactory.createTransaction(connector.getUser(), CHAIN_CODE_METHOD_ADD_MESSAGE, args);
 
@@ -117,38 +120,244 @@ public class UBLChaincodeService {
         }
     }
 
+    /**
+     * Call function "addMessages" on UBL Smart contract asynchronously. Messages are written in single transaction,
+     * so they are endorsed and ordered together. Argument order is same as in "addMessage", repeated for each message:
+     * 1. UBLChainTO which formatted to JSON and base64 encoded before sending.
+     * 2. Key for the message
+     * @param encodedMessages Messages encoded with {@link #encodeMessage(UBLChaincodeTO)}
+     * @param keys Keys for messages, in same order as messages
+     * @return Future completing when batch has been committed.
+     */
+    public CompletableFuture<TxResult> addMessagesAsync(List<String> encodedMessages, List<String> keys) {
+
+        logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_ADD_MESSAGES + " with " + encodedMessages.size() + " messages");
+
+        if (encodedMessages.size() != keys.size()) {
+            throw new IllegalArgumentException("Every message needs a key! Messages: " + encodedMessages.size() + ", keys: " + keys.size());
+        }
+
+        ArrayList<String> args = new ArrayList<String>(encodedMessages.size() * 2);
+        for (int i = 0; i < encodedMessages.size(); i++) {
+            args.add(encodedMessages.get(i));
+            args.add(keys.get(i));
+        }
+
+        TransactionProposalRequest request = requestFactory.createTransaction(connector.getUser(), CHAIN_CODE_METHOD_ADD_MESSAGES, args);
+        return this.connector.submitTransactionAsync(request);
+    }
+
+    /**
+     * Convert message object to compact JSON and base64 encode it, which is the format UBL Smart contract expects.
+     * @param message
+     * @return
+     * @throws UnsupportedEncodingException
+     */
+    String encodeMessage(UBLChaincodeTO message) throws UnsupportedEncodingException {
+        String json = EntityUtil.ObjectToCompactJson(message);
+        return Base64.getEncoder().encodeToString(json.getBytes("UTF-8"));
+    }
+
+    /**
+     * Same as {@link #encodeMessage(UBLChaincodeTO)}, but returns the base64 encoded message as ASCII bytes.
+     * @param message
+     * @return
+     */
+    byte[] encodeMessageBytes(UBLChaincodeTO message) {
+        String json = EntityUtil.ObjectToCompactJson(message);
+        return Base64.getEncoder().encode(json.getBytes(StandardCharsets.UTF_8));
+    }
+
     /**
      * Call function "getMessage" on UBL Smart contract. Argument order:
      * 1. Key for message
      */
     public UBLChaincodeTO getMessage(String key) {
 
-        logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_GET_MESSAGE);
+        try {
+            return queryMessage(key);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Read messages with default batch size and concurrency, see {@link #getMessages(Collection, int, int)}.
+     * @param keys
+     * @return
+     */
+    public List<MessageLookupResult> getMessages(Collection<String> keys) {
+        return getMessages(keys, DEFAULT_GET_MESSAGES_BATCH_SIZE, DEFAULT_GET_MESSAGES_CONCURRENCY);
+    }
 
+    /**
+     * Read many messages with few queries. Keys are split to batches of batchSize keys, and each batch is read with one
+     * call to function "getMessages" on UBL Smart contract. At most maxConcurrentBatches batches are queried at the same time.
+     * If smart contract doesn't support "getMessages" or the batch query fails, messages of the batch are read one by one
+     * with "getMessage". When batch query fails but reading the messages one by one succeeds, "getMessages" is assumed
+     * to be unsupported on the channel, and it is not called again for 10 minutes.
+     *
+     * "getMessages" argument order:
+     * 1..n. Keys of messages
+     * Response is JSON array of messages in same order as keys, with null for keys that were not found.
+     *
+     * @param keys
+     * @param batchSize
+     * @param maxConcurrentBatches
+     * @return Result for every key, in same order as the keys.
+     */
+    public List<MessageLookupResult> getMessages(Collection<String> keys, int batchSize, int maxConcurrentBatches) {
+
+        if (batchSize < 1 || maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("Invalid batch configuration! batchSize: " + batchSize + ", maxConcurrentBatches: " + maxConcurrentBatches);
+        }
+
+        List<String> keyList = new ArrayList<String>(keys);
+        MessageLookupResult[] results = new MessageLookupResult[keyList.size()];
+        int batchCount = (keyList.size() + batchSize - 1) / batchSize;
+        int lanes = Math.min(maxConcurrentBatches, batchCount);
+
+        logger.debug("Reading " + keyList.size() + " messages in " + batchCount + " batches");
+
+        //Each lane queries every lanes:th batch in turn, so at most 'lanes' batches are in progress at once
+        CompletableFuture<?>[] laneFutures = new CompletableFuture<?>[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            final int firstBatch = lane;
+            laneFutures[lane] = CompletableFuture.runAsync(() -> {
+                for (int batch = firstBatch; batch < batchCount; batch += lanes) {
+                    int from = batch * batchSize;
+                    int to = Math.min(from + batchSize, keyList.size());
+                    readBatch(keyList.subList(from, to), results, from);
+                }
+            }, getQueryExecutor());
+        }
+        CompletableFuture.allOf(laneFutures).join();
+
+        return Arrays.asList(results);
+    }
+
+    private void readBatch(List<String> keys, MessageLookupResult[] results, int offset) {
+
+        String channelName = connector.getChannel().getName();
+        boolean batchFailed = false;
+        if (isGetMessagesSupported(channelName)) {
+            try {
+                List<UBLChaincodeTO> messages = queryMessages(keys);
+                for (int i = 0; i < keys.size(); i++) {
+                    results[offset + i] = MessageLookupResult.of(keys.get(i), messages.get(i));
+                }
+                return;
+            }
+            catch (Exception e) {
+                logger.warn("Reading batch of " + keys.size() + " messages failed, reading them one by one: " + e.getMessage());
+                batchFailed = true;
+            }
+        }
+
+        boolean allRead = true;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            try {
+                results[offset + i] = MessageLookupResult.of(key, queryMessage(key));
+            }
+            catch (Exception e) {
+                results[offset + i] = MessageLookupResult.failed(key, e);
+                allRead = false;
+            }
+        }
+
+        //Peers answer "getMessage" but not "getMessages", so the chaincode doesn't have it. Don't try it for every batch.
+        if (batchFailed && allRead) {
+            logger.info("Smart contract method " + CHAIN_CODE_METHOD_GET_MESSAGES + " is not supported on channel " + channelName
+                    + ", reading messages one by one");
+            getMessagesUnsupportedUntil.put(channelName, System.currentTimeMillis() + GET_MESSAGES_UNSUPPORTED_MILLIS);
+        }
+    }
+
+    private static boolean isGetMessagesSupported(String channelName) {
+        Long unsupportedUntil = getMessagesUnsupportedUntil.get(channelName);
+        if (unsupportedUntil == null) {
+            return true;
+        }
+        if (System.currentTimeMillis() < unsupportedUntil) {
+            return false;
+        }
+        //Chaincode may have been upgraded since, try batch query again
+        getMessagesUnsupportedUntil.remove(channelName, unsupportedUntil);
+        return true;
+    }
+
+    /**
+     * Call function "getMessage" on UBL Smart contract.
+     * @return Message, or null if there is no message with the key.
+     * @throws BlockchainException If query failed.
+     */
+    private UBLChaincodeTO queryMessage(String key) throws BlockchainException, IOException {
+
+        logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_GET_MESSAGE);
 
         ArrayList<String> args = new ArrayList<String>();
         args.add(key);
 
         QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_MESSAGE, args);
 
-        try {
-            String response = this.connector.doQuery(request);
-            logger.debug("Received response:" + response);
-            UBLChaincodeTO chaincodeResponse = EntityUtil.JsonToObject(response, UBLChaincodeTO.class);
-            return chaincodeResponse;
+        ByteString response = this.connector.doQueryForPayload(request);
+        if (response == null) {
+            throw new BlockchainException("Query '" + CHAIN_CODE_METHOD_GET_MESSAGE + "' received no response");
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        logger.debug("Received response of " + response.size() + " bytes");
+
+        try (JsonResultReader<UBLChaincodeTO> message = JsonResultReader.forPayload(response, UBLChaincodeTO.class)) {
+            return message.hasNext() ? message.next() : null;
         }
-        return null;
     }
-    
+
+    /**
+     * Call function "getMessages" on UBL Smart contract.
+     * @return Messages in same order as keys, null for keys without message.
+     * @throws BlockchainException If query failed or response doesn't have a result for every key.
+     */
+    private List<UBLChaincodeTO> queryMessages(List<String> keys) throws BlockchainException, IOException {
+
+        logger.debug("Calling UBL Smart contract method:" + CHAIN_CODE_METHOD_GET_MESSAGES);
+
+        QueryByChaincodeRequest request = requestFactory.createQuery(connector.getUser(), CHAIN_CODE_METHOD_GET_MESSAGES, new ArrayList<String>(keys));
+
+        ByteString response = this.connector.doQueryForPayload(request);
+        if (response == null) {
+            throw new BlockchainException("Query '" + CHAIN_CODE_METHOD_GET_MESSAGES + "' received no response");
+        }
+
+        List<UBLChaincodeTO> messages;
+        try (JsonResultReader<UBLChaincodeTO> reader = JsonResultReader.forPayload(response, UBLChaincodeTO.class)) {
+            messages = reader.toList();
+        }
+        if (messages.size() != keys.size()) {
+            throw new BlockchainException("Query '" + CHAIN_CODE_METHOD_GET_MESSAGES + "' returned " + messages.size()
+                    + " results for " + keys.size() + " keys");
+        }
+        return messages;
+    }
+
+    private static ExecutorService getQueryExecutor() {
+        if (queryExecutor == null) {
+            synchronized (UBLChaincodeService.class) {
+                if (queryExecutor == null) {
+                    queryExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("ubl-get-messages"));
+                }
+            }
+        }
+        return queryExecutor;
+    }
+
     /**
      * Generate random key for document, needs to be generated on the client, because chaincodes need to
      * be deterministic. Chaincode can't needs to always create same output depending from time.
      * @return
      */
-    private String generateRandomKey() {
+    String generateRandomKey() {
     	
     	String mspId = this.connector.getConfig().organisation.getMspid();
     	String unixMillis = Long.toString(Instant.now().toEpochMilli());
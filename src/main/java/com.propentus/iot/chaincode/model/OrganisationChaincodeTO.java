@@ -28,10 +28,13 @@
 
 package com.propentus.iot.chaincode.model;
 
+import com.google.gson.annotations.JsonAdapter;
+import com.propentus.iot.chaincode.model.adapter.OrganisationChaincodeTOAdapter;
 
 /**
  * Model for organisation in Keystore smart contract.
  */
+@JsonAdapter(OrganisationChaincodeTOAdapter.class)
 public class OrganisationChaincodeTO {
 
     public String getMspID() {
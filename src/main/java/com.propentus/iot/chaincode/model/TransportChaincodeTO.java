@@ -29,7 +29,9 @@
 package com.propentus.iot.chaincode.model;
 
 import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.propentus.iot.chaincode.model.adapter.TransportChaincodeTOAdapter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,6 +39,7 @@ import java.util.List;
 /**
  * Model for TranportationChain smart contract.
  */
+@JsonAdapter(TransportChaincodeTOAdapter.class)
 public class TransportChaincodeTO {
 
     @SerializedName("id")
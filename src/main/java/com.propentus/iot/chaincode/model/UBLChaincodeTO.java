@@ -29,12 +29,20 @@
 package com.propentus.iot.chaincode.model;
 
 
+import com.google.gson.annotations.JsonAdapter;
+import com.propentus.iot.chaincode.model.adapter.UBLChaincodeTOAdapter;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Model for UBL-messages in UBL smart contract. Contains encrypted message and information about participants, who can decrypt this message.
  */
+@JsonAdapter(UBLChaincodeTOAdapter.class)
 public class UBLChaincodeTO {
 
     public enum FullEmptyIndicator {
@@ -51,6 +59,9 @@ public class UBLChaincodeTO {
     //  List of participants, participant contains MSPID and secret key
     public List<Participant> participants = new ArrayList<Participant>();
 
+    //  Participants by MSPID, built on first lookup and rebuilt if participant list is replaced or resized. Not serialized.
+    private transient volatile ParticipantIndex participantIndex;
+
     //  ID for this message.
     private String documentID;
 
@@ -151,6 +162,37 @@ public class UBLChaincodeTO {
         return participants;
     }
 
+    /**
+     * Find participant by MSPID without scanning the participant list. If same MSPID is listed many times,
+     * the first one is returned.
+     * @param mspID
+     * @return Participant, or null if organisation is not participant of this message.
+     */
+    public Participant getParticipant(String mspID) {
+        return getParticipantIndex().byMSPID.get(mspID);
+    }
+
+    public boolean hasParticipant(String mspID) {
+        return getParticipantIndex().byMSPID.containsKey(mspID);
+    }
+
+    /**
+     * MSPIDs of participants in list order. MSPIDs are interned, see {@link Participant#setMSPID(String)}.
+     * @return Unmodifiable set
+     */
+    public Set<String> getParticipantMSPIDs() {
+        return getParticipantIndex().mspIDs;
+    }
+
+    private ParticipantIndex getParticipantIndex() {
+        ParticipantIndex index = participantIndex;
+        if (index == null || !index.isCurrent(participants)) {
+            index = new ParticipantIndex(participants);
+            participantIndex = index;
+        }
+        return index;
+    }
+
     public String getDocumentID() {
         return documentID;
     }
@@ -252,8 +294,12 @@ public class UBLChaincodeTO {
             return MSPID;
         }
 
+        /**
+         * MSPID is interned, because same few organisations appear in participants of every message.
+         * @param MSPID
+         */
         public void setMSPID(String MSPID) {
-            this.MSPID = MSPID;
+            this.MSPID = MSPID != null ? MSPID.intern() : null;
         }
 
         private String MSPID;
@@ -269,4 +315,35 @@ public class UBLChaincodeTO {
         private String encryptedKey;
     }
 
+    /**
+     * Immutable snapshot of participants by MSPID. Index is replaced, never modified, so it can be shared between threads.
+     * Changes made to participants already in the list are not detected.
+     */
+    private static class ParticipantIndex {
+
+        private final List<Participant> source;
+        private final int size;
+        private final Map<String, Participant> byMSPID;
+        private final Set<String> mspIDs;
+
+        ParticipantIndex(List<Participant> participants) {
+            this.source = participants;
+            this.size = participants != null ? participants.size() : 0;
+
+            Map<String, Participant> index = new LinkedHashMap<String, Participant>(size * 4 / 3 + 1);
+            if (participants != null) {
+                for (Participant participant : participants) {
+                    if (participant != null && participant.getMSPID() != null && !index.containsKey(participant.getMSPID())) {
+                        index.put(participant.getMSPID(), participant);
+                    }
+                }
+            }
+            this.byMSPID = index;
+            this.mspIDs = Collections.unmodifiableSet(index.keySet());
+        }
+
+        boolean isCurrent(List<Participant> participants) {
+            return participants == source && (participants == null || participants.size() == size);
+        }
+    }
 }
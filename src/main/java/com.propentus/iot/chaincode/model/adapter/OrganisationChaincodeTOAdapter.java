@@ -0,0 +1,68 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode.model.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.propentus.iot.chaincode.model.OrganisationChaincodeTO;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes OrganisationChaincodeTO without reflection. JSON is identical to what Gson creates by default.
+ */
+public class OrganisationChaincodeTOAdapter extends TypeAdapter<OrganisationChaincodeTO> {
+
+    @Override
+    public void write(JsonWriter out, OrganisationChaincodeTO organisation) throws IOException {
+        out.beginObject();
+        UBLChaincodeTOAdapter.writeString(out, "mspID", organisation.getMspID());
+        UBLChaincodeTOAdapter.writeString(out, "publicKey", organisation.getPublicKey());
+        out.endObject();
+    }
+
+    @Override
+    public OrganisationChaincodeTO read(JsonReader in) throws IOException {
+        OrganisationChaincodeTO organisation = new OrganisationChaincodeTO();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("mspID".equals(name)) {
+                organisation.setMspID(UBLChaincodeTOAdapter.readString(in));
+            } else if ("publicKey".equals(name)) {
+                organisation.setPublicKey(UBLChaincodeTOAdapter.readString(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return organisation;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode.model.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.propentus.iot.chaincode.model.TransportChaincodeTO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes TransportChaincodeTO without reflection. JSON is identical to what Gson creates by default.
+ */
+public class TransportChaincodeTOAdapter extends TypeAdapter<TransportChaincodeTO> {
+
+    @Override
+    public void write(JsonWriter out, TransportChaincodeTO transport) throws IOException {
+        out.beginObject();
+        UBLChaincodeTOAdapter.writeString(out, "id", transport.getId());
+        if (transport.getParticipants() != null) {
+            out.name("participants");
+            out.beginArray();
+            for (String participant : transport.getParticipants()) {
+                out.value(participant);
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+
+    @Override
+    public TransportChaincodeTO read(JsonReader in) throws IOException {
+        TransportChaincodeTO transport = new TransportChaincodeTO();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("id".equals(name)) {
+                transport.setId(UBLChaincodeTOAdapter.readString(in));
+            } else if ("participants".equals(name)) {
+                transport.setParticipants(readParticipants(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return transport;
+    }
+
+    private static List<String> readParticipants(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<String> participants = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            participants.add(UBLChaincodeTOAdapter.readString(in));
+        }
+        in.endArray();
+        return participants;
+    }
+}
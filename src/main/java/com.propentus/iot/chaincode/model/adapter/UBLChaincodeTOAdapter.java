@@ -0,0 +1,187 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode.model.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes UBLChaincodeTO without reflection. JSON is identical to what Gson creates by default:
+ * fields in declaration order, null fields left out and decryptedMessage never written.
+ */
+public class UBLChaincodeTOAdapter extends TypeAdapter<UBLChaincodeTO> {
+
+    @Override
+    public void write(JsonWriter out, UBLChaincodeTO message) throws IOException {
+        out.beginObject();
+        writeString(out, "encryptedMessage", message.getEncryptedMessage());
+        if (message.participants != null) {
+            out.name("participants");
+            out.beginArray();
+            for (UBLChaincodeTO.Participant participant : message.participants) {
+                writeParticipant(out, participant);
+            }
+            out.endArray();
+        }
+        writeString(out, "documentID", message.getDocumentID());
+        writeString(out, "organisationID", message.getOrganisationID());
+        writeString(out, "supplyChainID", message.getSupplyChainID());
+        writeString(out, "containerID", message.getContainerID());
+        writeString(out, "senderParty", message.getSenderParty());
+        writeString(out, "RFIDTransportEquipment", message.getRFIDTransportEquipment());
+        writeString(out, "RFIDTransportHandlingUnit", message.getRFIDTransportHandlingUnit());
+        writeString(out, "statusTypeCode", message.getStatusTypeCode());
+        writeString(out, "timestamp", message.getTimestamp());
+        writeString(out, "carrierAssignedID", message.getCarrierAssignedID());
+        writeString(out, "shippingOrderID", message.getShippingOrderID());
+        if (message.getEmptyFullIndicator() != null) {
+            out.name("emptyFullIndicator").value(message.getEmptyFullIndicator().name());
+        }
+        writeString(out, "contentType", message.getContentType());
+        writeString(out, "contentTypeSchemeVersion", message.getContentTypeSchemeVersion());
+        writeString(out, "statusLocationId", message.getStatusLocationId());
+        out.endObject();
+    }
+
+    @Override
+    public UBLChaincodeTO read(JsonReader in) throws IOException {
+        UBLChaincodeTO message = new UBLChaincodeTO();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+                case "encryptedMessage": message.setEncryptedMessage(readString(in)); break;
+                case "participants": message.participants = readParticipants(in); break;
+                case "documentID": message.setDocumentID(readString(in)); break;
+                case "organisationID": message.setOrganisationID(readString(in)); break;
+                case "supplyChainID": message.setSupplyChainID(readString(in)); break;
+                case "containerID": message.setContainerID(readString(in)); break;
+                case "senderParty": message.setSenderParty(readString(in)); break;
+                case "RFIDTransportEquipment": message.setRFIDTransportEquipment(readString(in)); break;
+                case "RFIDTransportHandlingUnit": message.setRFIDTransportHandlingUnit(readString(in)); break;
+                case "statusTypeCode": message.setStatusTypeCode(readString(in)); break;
+                case "timestamp": message.setTimestamp(readString(in)); break;
+                case "carrierAssignedID": message.setCarrierAssignedID(readString(in)); break;
+                case "shippingOrderID": message.setShippingOrderID(readString(in)); break;
+                case "emptyFullIndicator": message.setEmptyFullIndicator(readIndicator(in)); break;
+                case "contentType": message.setContentType(readString(in)); break;
+                case "contentTypeSchemeVersion": message.setContentTypeSchemeVersion(readString(in)); break;
+                case "statusLocationId": message.setStatusLocationId(readString(in)); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return message;
+    }
+
+    private static void writeParticipant(JsonWriter out, UBLChaincodeTO.Participant participant) throws IOException {
+        if (participant == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeString(out, "MSPID", participant.getMSPID());
+        writeString(out, "encryptedKey", participant.getEncryptedKey());
+        out.endObject();
+    }
+
+    private static List<UBLChaincodeTO.Participant> readParticipants(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<UBLChaincodeTO.Participant> participants = new ArrayList<UBLChaincodeTO.Participant>();
+        in.beginArray();
+        while (in.hasNext()) {
+            participants.add(readParticipant(in));
+        }
+        in.endArray();
+        return participants;
+    }
+
+    private static UBLChaincodeTO.Participant readParticipant(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        UBLChaincodeTO.Participant participant = new UBLChaincodeTO.Participant();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("MSPID".equals(name)) {
+                participant.setMSPID(readString(in));
+            } else if ("encryptedKey".equals(name)) {
+                participant.setEncryptedKey(readString(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return participant;
+    }
+
+    private static UBLChaincodeTO.FullEmptyIndicator readIndicator(JsonReader in) throws IOException {
+        String value = readString(in);
+        if (value == null) {
+            return null;
+        }
+        //Gson maps unknown constants to null, do the same
+        for (UBLChaincodeTO.FullEmptyIndicator indicator : UBLChaincodeTO.FullEmptyIndicator.values()) {
+            if (indicator.name().equals(value)) {
+                return indicator;
+            }
+        }
+        return null;
+    }
+
+    static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        //Same as Gson's String adapter, which accepts booleans too
+        if (in.peek() == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+}
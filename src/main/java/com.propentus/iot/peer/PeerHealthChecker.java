@@ -0,0 +1,111 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.peer;
+
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically probes peers and records results to PeerStatisticsRegistry. Probes also reach ejected peers,
+ * which is how they get re-admitted by {@link PeerSelector}.
+ */
+public class PeerHealthChecker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerHealthChecker.class);
+
+    /**
+     * Health probe for single peer.
+     */
+    public interface Probe {
+        /**
+         * Probe peer and return its current block height. Throw exception if peer is not healthy.
+         * @param peerName
+         * @return
+         * @throws Exception
+         */
+        long probe(String peerName) throws Exception;
+    }
+
+    private final List<String> peerNames;
+    private final Probe probe;
+    private final PeerStatisticsRegistry statistics;
+    private ScheduledExecutorService scheduler;
+
+    public PeerHealthChecker(Collection<String> peerNames, Probe probe, PeerStatisticsRegistry statistics) {
+        this.peerNames = new ArrayList<>(peerNames);
+        this.probe = probe;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Start probing all peers with given interval.
+     * @param intervalMillis
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            throw new IllegalStateException("PeerHealthChecker is already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("peer-health-check"));
+        scheduler.scheduleWithFixedDelay(this::checkNow, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Probe all peers once, in calling thread.
+     */
+    public void checkNow() {
+        for (String peerName : peerNames) {
+            PeerStatistics peerStatistics = statistics.get(peerName);
+            long startTime = System.nanoTime();
+            try {
+                long height = probe.probe(peerName);
+                peerStatistics.recordSuccess(System.nanoTime() - startTime);
+                peerStatistics.recordBlockHeight(height);
+            } catch (Exception e) {
+                logger.warn("Health check of peer '{}' failed: {}", peerName, e.getMessage());
+                peerStatistics.recordFailure();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.peer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Chooses peers for queries and endorsements based on PeerStatistics. Healthy peers are ordered by score, which
+ * combines moving average latency, error rate and how many blocks peer is behind the highest known block height.
+ *
+ * Peer is ejected from routing after ejectAfterFailures consecutive failures, or if it falls more than maxBlockLag
+ * blocks behind other peers. Ejected peer is re-admitted after readmitAfterSuccesses successful health checks since
+ * its ejection, or on probation after retryAfterMillis, so peers recover even when health checks are not running.
+ * Peer that is still more than maxBlockLag blocks behind is not re-admitted.
+ *
+ * Selector works with peer names, so any peer representation can be routed, not only Fabric peers.
+ */
+public class PeerSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerSelector.class);
+
+    public static final int DEFAULT_EJECT_AFTER_FAILURES = 3;
+    public static final int DEFAULT_READMIT_AFTER_SUCCESSES = 2;
+    public static final long DEFAULT_MAX_BLOCK_LAG = 10;
+    public static final long DEFAULT_RETRY_AFTER_MILLIS = 30000;
+
+    //Score penalties. Score is in milliseconds, lower is better.
+    private static final double ERROR_RATE_PENALTY_MILLIS = 1000.0;
+    private static final double BLOCK_LAG_PENALTY_MILLIS = 50.0;
+
+    private final PeerStatisticsRegistry statistics;
+    private final int ejectAfterFailures;
+    private final int readmitAfterSuccesses;
+    private final long maxBlockLag;
+    private final long retryAfterMillis;
+
+    public PeerSelector(PeerStatisticsRegistry statistics) {
+        this(statistics, DEFAULT_EJECT_AFTER_FAILURES, DEFAULT_READMIT_AFTER_SUCCESSES, DEFAULT_MAX_BLOCK_LAG, DEFAULT_RETRY_AFTER_MILLIS);
+    }
+
+    public PeerSelector(PeerStatisticsRegistry statistics, int ejectAfterFailures, int readmitAfterSuccesses, long maxBlockLag, long retryAfterMillis) {
+        this.statistics = statistics;
+        this.ejectAfterFailures = ejectAfterFailures;
+        this.readmitAfterSuccesses = readmitAfterSuccesses;
+        this.maxBlockLag = maxBlockLag;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Select at most count best scoring healthy peers. If all peers are ejected, all peers are returned in score order,
+     * so requests are never stopped completely.
+     * @param peers Candidate peers
+     * @param nameOf Function returning name of peer
+     * @param count Maximum amount of peers to return
+     * @return Selected peers, best first
+     */
+    public <P> List<P> select(Collection<P> peers, Function<P, String> nameOf, int count) {
+        return select(peers, nameOf, count, 0);
+    }
+
+    /**
+     * Select at most count best scoring healthy peers. If there are less than minimum healthy peers, selection is
+     * topped up with best scoring ejected peers, so request that needs minimum peers can still be sent.
+     * @param peers Candidate peers
+     * @param nameOf Function returning name of peer
+     * @param count Maximum amount of peers to return
+     * @param minimum Amount of peers to return even if some of them are ejected
+     * @return Selected peers, healthy peers first, best first
+     */
+    public <P> List<P> select(Collection<P> peers, Function<P, String> nameOf, int count, int minimum) {
+
+        List<P> healthy = new ArrayList<>();
+        List<P> ejected = new ArrayList<>();
+        rank(peers, nameOf, healthy, ejected);
+
+        List<P> candidates = healthy;
+        if (healthy.isEmpty()) {
+            logger.warn("All {} peers are ejected, routing to all of them", peers.size());
+            candidates = ejected;
+        } else if (healthy.size() < minimum) {
+            logger.warn("Only {} healthy peers, routing also to {} ejected peers", healthy.size(), Math.min(minimum - healthy.size(), ejected.size()));
+            candidates.addAll(ejected.subList(0, Math.min(minimum - healthy.size(), ejected.size())));
+        }
+
+        return candidates.size() > count ? new ArrayList<>(candidates.subList(0, count)) : candidates;
+    }
+
+    /**
+     * Select all healthy peers, best first.
+     * @param peers
+     * @param nameOf
+     * @return
+     */
+    public <P> List<P> selectHealthy(Collection<P> peers, Function<P, String> nameOf) {
+        return select(peers, nameOf, peers.size());
+    }
+
+    /**
+     * Calculate score of peer. Lower is better. Peers without latency samples get zero latency, so new peers are tried
+     * first. Error rate is added as a penalty instead of scaling the latency, so a peer that has only failed doesn't
+     * get the best score.
+     * @param peerStatistics
+     * @param maxHeight Highest block height known from any peer
+     * @return
+     */
+    public double score(PeerStatistics peerStatistics, long maxHeight) {
+        double latency = Math.max(0, peerStatistics.getEwmaLatencyMillis());
+        double score = latency + ERROR_RATE_PENALTY_MILLIS * peerStatistics.getEwmaErrorRate();
+
+        long height = peerStatistics.getBlockHeight();
+        if (height >= 0 && maxHeight > height) {
+            score += (maxHeight - height) * BLOCK_LAG_PENALTY_MILLIS;
+        }
+        return score;
+    }
+
+    /**
+     * Update ejection state of peer from its latest statistics.
+     * @return True if peer is healthy and can be routed to.
+     */
+    boolean evaluateHealth(PeerStatistics peerStatistics, long maxHeight) {
+
+        synchronized (peerStatistics) {
+            long now = System.currentTimeMillis();
+            long height = peerStatistics.getBlockHeight();
+            boolean lagging = height >= 0 && maxHeight - height > maxBlockLag;
+
+            if (peerStatistics.isEjected()) {
+                if (lagging) {
+                    //Lagging peer answers requests, so successes alone don't re-admit it before it has caught up
+                    return false;
+                }
+                if (peerStatistics.getConsecutiveSuccesses() >= readmitAfterSuccesses) {
+                    logger.info("Re-admitting peer '{}' after {} successful requests", peerStatistics.getPeerName(), peerStatistics.getConsecutiveSuccesses());
+                    peerStatistics.readmit(false, ejectAfterFailures);
+                } else if (now - peerStatistics.getEjectedAtMillis() >= retryAfterMillis) {
+                    logger.info("Re-admitting peer '{}' on probation", peerStatistics.getPeerName());
+                    peerStatistics.readmit(true, ejectAfterFailures);
+                } else {
+                    return false;
+                }
+            }
+
+            if (peerStatistics.getConsecutiveFailures() >= ejectAfterFailures || lagging) {
+                logger.warn("Ejecting unhealthy peer: {}", peerStatistics);
+                peerStatistics.eject(now);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Evaluate health of every peer and sort them by score into healthy and ejected peers.
+     */
+    private <P> void rank(Collection<P> peers, Function<P, String> nameOf, List<P> healthy, List<P> ejected) {
+
+        long maxHeight = getMaxBlockHeight(peers, nameOf);
+
+        for (P peer : peers) {
+            if (evaluateHealth(statistics.get(nameOf.apply(peer)), maxHeight)) {
+                healthy.add(peer);
+            } else {
+                ejected.add(peer);
+            }
+        }
+
+        Comparator<P> byScore = Comparator.comparingDouble(peer -> score(statistics.get(nameOf.apply(peer)), maxHeight));
+        healthy.sort(byScore);
+        ejected.sort(byScore);
+    }
+
+    private <P> long getMaxBlockHeight(Collection<P> peers, Function<P, String> nameOf) {
+        long maxHeight = -1;
+        for (P peer : peers) {
+            maxHeight = Math.max(maxHeight, statistics.get(nameOf.apply(peer)).getBlockHeight());
+        }
+        return maxHeight;
+    }
+}
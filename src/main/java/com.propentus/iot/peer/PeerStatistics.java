@@ -0,0 +1,185 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.peer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request statistics of single peer. Latency and error rate are tracked as exponentially weighted moving averages,
+ * so recent requests affect them more than old ones. Also holds health state of the peer, which is maintained by
+ * {@link PeerSelector}. Thread-safe.
+ */
+public class PeerStatistics {
+
+    //Weight of newest sample in moving averages
+    static final double EWMA_ALPHA = 0.2;
+
+    private final String peerName;
+
+    private long requestCount = 0;
+    private long errorCount = 0;
+    private double ewmaLatencyMillis = -1;
+    private double lastLatencyMillis = -1;
+    private double ewmaErrorRate = 0;
+    private long blockHeight = -1;
+
+    //Health state
+    private int consecutiveFailures = 0;
+    private int consecutiveSuccesses = 0;
+    private boolean ejected = false;
+    private long ejectedAtMillis = 0;
+
+    public PeerStatistics(String peerName) {
+        this.peerName = peerName;
+    }
+
+    /**
+     * Record successful request to peer.
+     * @param latencyNanos Duration of request in nanoseconds
+     */
+    public synchronized void recordSuccess(long latencyNanos) {
+        requestCount++;
+        consecutiveSuccesses++;
+        consecutiveFailures = 0;
+        ewmaErrorRate = (1 - EWMA_ALPHA) * ewmaErrorRate;
+        lastLatencyMillis = latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        if (ewmaLatencyMillis < 0) {
+            ewmaLatencyMillis = lastLatencyMillis;
+        } else {
+            ewmaLatencyMillis = EWMA_ALPHA * lastLatencyMillis + (1 - EWMA_ALPHA) * ewmaLatencyMillis;
+        }
+    }
+
+    /**
+     * Record failed request to peer.
+     */
+    public synchronized void recordFailure() {
+        requestCount++;
+        errorCount++;
+        consecutiveFailures++;
+        consecutiveSuccesses = 0;
+        ewmaErrorRate = EWMA_ALPHA + (1 - EWMA_ALPHA) * ewmaErrorRate;
+    }
+
+    /**
+     * Record block height reported by peer.
+     * @param blockHeight
+     */
+    public synchronized void recordBlockHeight(long blockHeight) {
+        this.blockHeight = blockHeight;
+    }
+
+    public String getPeerName() {
+        return peerName;
+    }
+
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    public synchronized long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Moving average of successful request latency in milliseconds, or -1 if no successful requests are recorded.
+     * @return
+     */
+    public synchronized double getEwmaLatencyMillis() {
+        return ewmaLatencyMillis;
+    }
+
+    /**
+     * Latency of latest successful request in milliseconds, or -1 if no successful requests are recorded.
+     * @return
+     */
+    public synchronized double getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    /**
+     * Moving average of failed requests, between 0 (no recent failures) and 1 (only failures).
+     * @return
+     */
+    public synchronized double getEwmaErrorRate() {
+        return ewmaErrorRate;
+    }
+
+    /**
+     * Latest block height reported by peer, or -1 if unknown.
+     * @return
+     */
+    public synchronized long getBlockHeight() {
+        return blockHeight;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized int getConsecutiveSuccesses() {
+        return consecutiveSuccesses;
+    }
+
+    /**
+     * Check if peer is currently ejected from routing because of failed health checks.
+     * @return
+     */
+    public synchronized boolean isEjected() {
+        return ejected;
+    }
+
+    synchronized long getEjectedAtMillis() {
+        return ejectedAtMillis;
+    }
+
+    synchronized void eject(long nowMillis) {
+        ejected = true;
+        ejectedAtMillis = nowMillis;
+        //Only successes after ejection count towards re-admission
+        consecutiveSuccesses = 0;
+    }
+
+    /**
+     * Re-admit peer to routing.
+     * @param onProbation If true, peer is ejected again on its next failure.
+     * @param ejectAfterFailures Failure threshold used for ejecting peers
+     */
+    synchronized void readmit(boolean onProbation, int ejectAfterFailures) {
+        ejected = false;
+        consecutiveFailures = onProbation ? ejectAfterFailures - 1 : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PeerStatistics{peer='" + peerName + "', requests=" + requestCount + ", errors=" + errorCount
+                + ", ewmaLatencyMillis=" + ewmaLatencyMillis + ", ewmaErrorRate=" + ewmaErrorRate
+                + ", blockHeight=" + blockHeight + ", ejected=" + ejected + "}";
+    }
+}
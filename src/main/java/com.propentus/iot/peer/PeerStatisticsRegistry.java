@@ -0,0 +1,55 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.peer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds PeerStatistics of all peers, keyed by peer name.
+ */
+public class PeerStatisticsRegistry {
+
+    private final ConcurrentMap<String, PeerStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Get statistics for peer, creating empty statistics on first call.
+     * @param peerName
+     * @return
+     */
+    public PeerStatistics get(String peerName) {
+        return statistics.computeIfAbsent(peerName, PeerStatistics::new);
+    }
+
+    public Collection<PeerStatistics> getAll() {
+        return Collections.unmodifiableCollection(statistics.values());
+    }
+}
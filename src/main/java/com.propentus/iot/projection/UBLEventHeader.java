@@ -0,0 +1,74 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.projection;
+
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+
+/**
+ * UBL message as stored in {@link UBLEventProjection}. Contains header fields and participants of the message, but not
+ * the encrypted content, which can be fetched with {@link com.propentus.iot.chaincode.UBLChaincodeService#getMessage(String)}.
+ */
+public class UBLEventHeader {
+
+    private String key;
+    private String transactionID;
+    private long blockNumber;
+    private UBLChaincodeTO message;
+
+    UBLEventHeader(String key, String transactionID, long blockNumber, UBLChaincodeTO message) {
+        this.key = key;
+        this.transactionID = transactionID;
+        this.blockNumber = blockNumber;
+        this.message = message;
+    }
+
+    /**
+     * Ledger key of the message.
+     * @return
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public String getTransactionID() {
+        return transactionID;
+    }
+
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    /**
+     * Message without encrypted content.
+     * @return
+     */
+    public UBLChaincodeTO getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.projection;
+
+import com.google.gson.JsonParseException;
+import com.google.protobuf.ByteString;
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.common.util.EntityUtil;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
+import com.propentus.iot.BlockchainConnector;
+import com.propentus.iot.chaincode.UBLChaincodeService;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.BlockListener;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.TxReadWriteSetInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local, queryable copy of UBL messages written to the channel. Messages are read from the write-sets of committed
+ * blocks, so queries by containerID, supplyChainID or timestamp don't need any requests to peers.
+ *
+ * On start, blocks missing since last checkpoint are read with block queries, after which new blocks are received from
+ * block events. Processed messages are appended to a journal file and the number of the last processed block to a
+ * checkpoint file in the store directory, so after restart only new blocks need to be read.
+ *
+ * Blocks are processed in order by a single background thread. Queries can be done from any thread.
+ */
+public class UBLEventProjection implements BlockListener, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(UBLEventProjection.class);
+
+    private static final String JOURNAL_FILE = "ubl-events.journal";
+    private static final String CHECKPOINT_FILE = "ubl-events.checkpoint";
+
+    /**
+     * Line of the journal file.
+     */
+    private static class JournalEntry {
+        String key;
+        String transactionID;
+        long blockNumber;
+        UBLChaincodeTO message;
+    }
+
+    private final Channel channel;
+    private final Path journalFile;
+    private final Path checkpointFile;
+    private final ExecutorService processor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("ubl-projection"));
+
+    private final ConcurrentMap<String, UBLEventHeader> byKey = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Queue<UBLEventHeader>> byContainerID = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Queue<UBLEventHeader>> bySupplyChainID = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<String, Queue<UBLEventHeader>> byTimestamp = new ConcurrentSkipListMap<>();
+
+    //Number of last processed block, -1 if none. Written only by processor thread.
+    private volatile long checkpoint = -1;
+    private String listenerHandle;
+    private BufferedWriter journal;
+
+    /**
+     * @param connector Connector of the channel to project
+     * @param storeDirectory Directory for journal and checkpoint files, created if it doesn't exist
+     */
+    public UBLEventProjection(BlockchainConnector connector, Path storeDirectory) {
+        this(connector.getChannel(), storeDirectory);
+    }
+
+    UBLEventProjection(Channel channel, Path storeDirectory) {
+        this.channel = channel;
+        this.journalFile = storeDirectory.resolve(JOURNAL_FILE);
+        this.checkpointFile = storeDirectory.resolve(CHECKPOINT_FILE);
+    }
+
+    /**
+     * Load stored messages, read blocks missed since last checkpoint and start receiving new blocks.
+     * Returns when the projection has caught up with the current height of the channel.
+     * @throws BlockchainException
+     * @throws IOException
+     */
+    public synchronized void start() throws BlockchainException, IOException {
+
+        if (listenerHandle != null) {
+            return;
+        }
+
+        openJournal();
+
+        try {
+            //Register first, so no block is missed between catching up and receiving events
+            listenerHandle = channel.registerBlockListener(this);
+
+            long height = channel.queryBlockchainInfo().getHeight();
+            logger.info("Projecting UBL events from block {} to {}", checkpoint + 1, height - 1);
+            processor.submit(() -> {
+                catchUp(height - 1);
+                return null;
+            }).get();
+        } catch (Exception e) {
+            throw new BlockchainException("Starting UBL event projection failed!", e);
+        }
+    }
+
+    @Override
+    public void received(BlockEvent blockEvent) {
+        processor.execute(() -> {
+            try {
+                long blockNumber = blockEvent.getBlockNumber();
+                if (blockNumber <= checkpoint) {
+                    //Already read, either while catching up or from another event hub
+                    return;
+                }
+                catchUp(blockNumber - 1);
+                process(blockEvent);
+            } catch (Exception e) {
+                //Missed block will be read with next block, or on next start
+                logger.error("Projecting block " + blockEvent.getBlockNumber() + " failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Message with given ledger key.
+     * @param key
+     * @return Message, or null if there is no such message.
+     */
+    public UBLEventHeader get(String key) {
+        return byKey.get(key);
+    }
+
+    public List<UBLEventHeader> getByContainerID(String containerID) {
+        return copyOf(byContainerID.get(containerID));
+    }
+
+    public List<UBLEventHeader> getBySupplyChainID(String supplyChainID) {
+        return copyOf(bySupplyChainID.get(supplyChainID));
+    }
+
+    /**
+     * Messages with timestamp in given range, ordered by timestamp. Timestamps are compared as Strings, so the range
+     * must use the same "YYYY-MM-DD HH:MM:SS+TIMEZONE" format and time zone as the messages.
+     * @param fromInclusive
+     * @param toExclusive
+     * @return
+     */
+    public List<UBLEventHeader> getByTimestamp(String fromInclusive, String toExclusive) {
+        List<UBLEventHeader> events = new ArrayList<>();
+        for (Queue<UBLEventHeader> sameTimestamp : byTimestamp.subMap(fromInclusive, toExclusive).values()) {
+            events.addAll(sameTimestamp);
+        }
+        return events;
+    }
+
+    /**
+     * Amount of messages in projection.
+     * @return
+     */
+    public int size() {
+        return byKey.size();
+    }
+
+    /**
+     * Number of last processed block, -1 if no blocks have been processed.
+     * @return
+     */
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (listenerHandle != null) {
+            try {
+                channel.unregisterBlockListener(listenerHandle);
+            } catch (Exception e) {
+                logger.warn("Unregistering block listener failed: " + e.getMessage());
+            }
+            listenerHandle = null;
+        }
+        processor.shutdown();
+        try {
+            processor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.warn("Closing journal failed: " + e.getMessage());
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Read blocks after checkpoint up to given block with block queries.
+     */
+    private void catchUp(long toBlock) throws Exception {
+        for (long blockNumber = checkpoint + 1; blockNumber <= toBlock; blockNumber++) {
+            process(channel.queryBlockByNumber(blockNumber));
+        }
+    }
+
+    /**
+     * Read UBL messages from write-sets of valid transactions in block, then write them to journal and move checkpoint.
+     */
+    private void process(BlockInfo block) throws Exception {
+
+        List<JournalEntry> entries = new ArrayList<>();
+
+        for (BlockInfo.EnvelopeInfo envelope : block.getEnvelopeInfos()) {
+            if (envelope.getType() != BlockInfo.EnvelopeType.TRANSACTION_ENVELOPE || !envelope.isValid()) {
+                continue;
+            }
+            BlockInfo.TransactionEnvelopeInfo transaction = (BlockInfo.TransactionEnvelopeInfo) envelope;
+            for (BlockInfo.TransactionEnvelopeInfo.TransactionActionInfo action : transaction.getTransactionActionInfos()) {
+                TxReadWriteSetInfo rwsetInfo = action.getTxReadWriteSet();
+                if (rwsetInfo == null) {
+                    continue;
+                }
+                for (TxReadWriteSetInfo.NsRwsetInfo nsRwset : rwsetInfo.getNsRwsetInfos()) {
+                    if (!UBLChaincodeService.CHAIN_CODE_NAME.equals(nsRwset.getNamespace())) {
+                        continue;
+                    }
+                    for (KvRwset.KVWrite write : nsRwset.getRwset().getWritesList()) {
+                        JournalEntry entry = decode(write, envelope.getTransactionID(), block.getBlockNumber());
+                        if (entry != null) {
+                            entries.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+
+        for (JournalEntry entry : entries) {
+            journal.write(EntityUtil.ObjectToCompactJson(entry));
+            journal.newLine();
+            index(entry);
+        }
+        journal.flush();
+
+        checkpoint = block.getBlockNumber();
+        writeCheckpoint();
+
+        if (!entries.isEmpty()) {
+            logger.debug("Projected {} UBL messages from block {}", entries.size(), block.getBlockNumber());
+        }
+    }
+
+    /**
+     * Decode UBL message from write. Smart contract stores messages as JSON, base64 encoded values are accepted too.
+     * @return Entry, or null if the write is not a UBL message.
+     */
+    private JournalEntry decode(KvRwset.KVWrite write, String transactionID, long blockNumber) {
+        if (write.getIsDelete()) {
+            return null;
+        }
+        ByteString value = write.getValue();
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        UBLChaincodeTO message;
+        try {
+            String json = value.toStringUtf8().trim();
+            if (!json.startsWith("{")) {
+                json = new String(Base64.getDecoder().decode(json), StandardCharsets.UTF_8);
+            }
+            message = EntityUtil.JsonToObject(json, UBLChaincodeTO.class);
+        } catch (JsonParseException | IllegalArgumentException | IllegalStateException e) {
+            logger.debug("Skipping write of key '{}', it is not a UBL message", write.getKey());
+            return null;
+        }
+        //Every UBL message has encrypted content, other JSON values are not messages
+        if (message == null || message.getEncryptedMessage() == null) {
+            return null;
+        }
+
+        //Only headers are kept, content can be read from ledger with the key
+        message.setEncryptedMessage(null);
+
+        JournalEntry entry = new JournalEntry();
+        entry.key = write.getKey();
+        entry.transactionID = transactionID;
+        entry.blockNumber = blockNumber;
+        entry.message = message;
+        return entry;
+    }
+
+    private void index(JournalEntry entry) {
+        UBLEventHeader header = new UBLEventHeader(entry.key, entry.transactionID, entry.blockNumber, entry.message);
+
+        UBLEventHeader previous = byKey.put(header.getKey(), header);
+        if (previous != null) {
+            removeFrom(byContainerID, previous.getMessage().getContainerID(), previous);
+            removeFrom(bySupplyChainID, previous.getMessage().getSupplyChainID(), previous);
+            removeFrom(byTimestamp, previous.getMessage().getTimestamp(), previous);
+        }
+
+        addTo(byContainerID, header.getMessage().getContainerID(), header);
+        addTo(bySupplyChainID, header.getMessage().getSupplyChainID(), header);
+        addTo(byTimestamp, header.getMessage().getTimestamp(), header);
+    }
+
+    private static void addTo(ConcurrentMap<String, Queue<UBLEventHeader>> index, String value, UBLEventHeader header) {
+        if (value != null) {
+            index.computeIfAbsent(value, v -> new ConcurrentLinkedQueue<>()).add(header);
+        }
+    }
+
+    private static void removeFrom(Map<String, Queue<UBLEventHeader>> index, String value, UBLEventHeader header) {
+        if (value != null && index.containsKey(value)) {
+            index.get(value).remove(header);
+        }
+    }
+
+    private static List<UBLEventHeader> copyOf(Collection<UBLEventHeader> events) {
+        if (events == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Load stored messages and open journal for appending.
+     */
+    void openJournal() throws IOException {
+        Files.createDirectories(journalFile.getParent());
+        load();
+        journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Load journal entries up to checkpoint. Entries after checkpoint were written by an interrupted block,
+     * which is processed again.
+     */
+    private void load() throws IOException {
+        if (Files.exists(checkpointFile)) {
+            checkpoint = Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim());
+        }
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        truncatePartialLine();
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                JournalEntry entry;
+                try {
+                    entry = EntityUtil.JsonToObject(line, JournalEntry.class);
+                } catch (JsonParseException e) {
+                    logger.warn("Skipping invalid journal line: " + e.getMessage());
+                    continue;
+                }
+                if (entry != null && entry.blockNumber <= checkpoint) {
+                    index(entry);
+                    loaded++;
+                }
+            }
+        }
+        logger.info("Loaded {} UBL messages from journal, checkpoint is block {}", loaded, checkpoint);
+    }
+
+    /**
+     * Remove partial last line left by a process that was killed while writing. Otherwise next entry would be appended
+     * to the same line, and both would be lost as invalid JSON.
+     */
+    private void truncatePartialLine() throws IOException {
+        try (FileChannel file = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = file.size();
+            long end = size;
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            while (end > 0) {
+                lastByte.clear();
+                file.read(lastByte, end - 1);
+                if (lastByte.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < size) {
+                logger.warn("Removing partial last line of {} bytes from journal", size - end);
+                file.truncate(end);
+            }
+        }
+    }
+
+    /**
+     * Write checkpoint to temporary file and move it over the old one, so checkpoint file is never partially written.
+     */
+    private void writeCheckpoint() throws IOException {
+        Path temp = checkpointFile.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        Files.write(temp, Long.toString(checkpoint).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
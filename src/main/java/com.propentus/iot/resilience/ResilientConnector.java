@@ -0,0 +1,316 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.resilience;
+
+import com.google.protobuf.ByteString;
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.iot.BlockchainConnector;
+import com.propentus.iot.EndorsementValidator;
+import com.propentus.iot.peer.PeerStatisticsRegistry;
+import org.hyperledger.fabric.sdk.ChaincodeResponse;
+import org.hyperledger.fabric.sdk.Channel;
+import org.hyperledger.fabric.sdk.Peer;
+import org.hyperledger.fabric.sdk.ProposalResponse;
+import org.hyperledger.fabric.sdk.QueryByChaincodeRequest;
+import org.hyperledger.fabric.sdk.TransactionProposalRequest;
+import org.hyperledger.fabric.sdk.TransactionRequest;
+import org.hyperledger.fabric.sdk.User;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calls chaincode through BlockchainConnector with retries and circuit breakers. Unlike BlockchainConnector, failures
+ * are thrown as BlockchainException instead of returned as null.
+ *
+ * - Peers that can't be reached or don't answer in time are retried with jittered exponential backoff, see {@link RetryPolicy}.
+ * - Errors returned by chaincode are not retried.
+ * - Peers are chosen by {@link BlockchainConnector#getPeerSelector()}, so peers ejected by failed requests or health
+ *   checks are skipped. Queries are sent only to chaincode query peers, and transaction proposals only to endorsing
+ *   peers. Result and latency of every peer are recorded to {@link BlockchainConnector#getPeerStatistics()}, shared
+ *   with the connector, so there is one health model for peers.
+ * - Every chaincode has own circuit breaker. Calls to chaincode with open circuit fail immediately.
+ * - Retries are limited by {@link RetryBudget}, so that during an outage retries can't multiply the load on peers.
+ *
+ * Endorsements are checked with {@link EndorsementValidator} against the endorsement policy of the connector before
+ * they are sent to orderer. Only endorsement is retried. Transaction is sent to orderer once, so retries can't write it twice.
+ */
+public class ResilientConnector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResilientConnector.class);
+
+    private interface Call<T> {
+        T call() throws BlockchainException;
+    }
+
+    private final BlockchainConnector connector;
+    private final RetryPolicy retryPolicy;
+    private final RetryBudget retryBudget;
+    private final CircuitBreakerRegistry chaincodeBreakers;
+
+    public ResilientConnector(BlockchainConnector connector) {
+        this(connector, new RetryPolicy(), new RetryBudget(), new CircuitBreakerRegistry());
+    }
+
+    public ResilientConnector(BlockchainConnector connector, RetryPolicy retryPolicy, RetryBudget retryBudget,
+                              CircuitBreakerRegistry chaincodeBreakers) {
+        this.connector = connector;
+        this.retryPolicy = retryPolicy;
+        this.retryBudget = retryBudget;
+        this.chaincodeBreakers = chaincodeBreakers;
+    }
+
+    /**
+     * Query chaincode and return payload of first successful response.
+     * @param request
+     * @return
+     * @throws BlockchainException If all attempts failed, or chaincode returned an error.
+     */
+    public ByteString doQueryForPayload(QueryByChaincodeRequest request) throws BlockchainException {
+        return execute(request, () -> queryOnce(request));
+    }
+
+    /**
+     * Same as {@link #doQueryForPayload(QueryByChaincodeRequest)}, decoded as UTF-8 String.
+     * @param request
+     * @return
+     * @throws BlockchainException
+     */
+    public String doQuery(QueryByChaincodeRequest request) throws BlockchainException {
+        return doQueryForPayload(request).toStringUtf8();
+    }
+
+    /**
+     * Endorse transaction, retrying endorsement if needed, and send it to orderer. Like
+     * {@link BlockchainConnector#doTransaction(TransactionProposalRequest)}, doesn't wait for the commit.
+     * @param request
+     * @return Payload returned by chaincode in endorsement.
+     * @throws BlockchainException If endorsement failed.
+     */
+    public String doTransaction(TransactionProposalRequest request) throws BlockchainException {
+
+        List<ProposalResponse> successful = execute(request, () -> endorseOnce(request));
+
+        User user = connector.getUser();
+        connector.getChannel().sendTransaction(successful, user).whenComplete((event, throwable) -> {
+            if (throwable != null) {
+                logger.error("Sending transaction to orderer failed: " + throwable.getMessage(), throwable);
+            }
+        });
+        return successful.get(0).getProposalResponse().getResponse().getPayload().toStringUtf8();
+    }
+
+    public CircuitBreakerRegistry getChaincodeBreakers() {
+        return chaincodeBreakers;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    private <T> T execute(TransactionRequest request, Call<T> call) throws BlockchainException {
+
+        String chaincodeName = request.getChaincodeID() != null ? request.getChaincodeID().getName() : "";
+        CircuitBreaker chaincodeBreaker = chaincodeBreakers.get(chaincodeName);
+        retryBudget.recordRequest();
+
+        for (int attempt = 1; ; attempt++) {
+
+            if (!chaincodeBreaker.tryAcquire()) {
+                throw new CircuitOpenException("Circuit of chaincode '" + chaincodeName + "' is open");
+            }
+
+            try {
+                T result = call.call();
+                chaincodeBreaker.recordSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                //Unexpected error from SDK, breaker must not be left waiting for the result of a half-open trial
+                chaincodeBreaker.recordFailure();
+                throw e;
+            } catch (BlockchainException e) {
+                boolean retryable = retryPolicy.isRetryable(e);
+                if (retryable) {
+                    chaincodeBreaker.recordFailure();
+                } else {
+                    chaincodeBreaker.release();
+                }
+
+                if (!retryable || attempt >= retryPolicy.getMaxAttempts()) {
+                    throw e;
+                }
+                if (!retryBudget.tryRetry()) {
+                    logger.warn("Retry budget exhausted, not retrying '{}' on chaincode '{}'", request.getFcn(), chaincodeName);
+                    throw e;
+                }
+
+                long delay = retryPolicy.getDelayMillis(attempt);
+                logger.warn("Attempt {} of '{}' on chaincode '{}' failed, retrying in {} ms: {}",
+                        attempt, request.getFcn(), chaincodeName, delay, e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new BlockchainException("Interrupted while waiting to retry '" + request.getFcn() + "'", e);
+                }
+            }
+        }
+    }
+
+    private ByteString queryOnce(QueryByChaincodeRequest request) throws BlockchainException {
+
+        Channel channel = connector.getChannel();
+        List<Peer> peers = selectPeers(BlockchainConnector.getQueryPeers(channel));
+
+        Collection<ProposalResponse> responses;
+        long startTime = System.nanoTime();
+        try {
+            responses = channel.queryByChaincode(request, peers);
+        } catch (ProposalException e) {
+            recordFailure(peers);
+            throw new PeerUnavailableException("Query '" + request.getFcn() + "' failed!", e);
+        } catch (InvalidArgumentException e) {
+            throw new BlockchainException("Invalid query '" + request.getFcn() + "'!", e);
+        } catch (RuntimeException e) {
+            recordFailure(peers);
+            throw e;
+        }
+
+        return collect("Query '" + request.getFcn() + "'", peers, responses, startTime).get(0).getProposalResponse().getResponse().getPayload();
+    }
+
+    private List<ProposalResponse> endorseOnce(TransactionProposalRequest request) throws BlockchainException {
+
+        Channel channel = connector.getChannel();
+        List<Peer> peers = selectPeers(BlockchainConnector.getEndorsingPeers(channel));
+
+        Collection<ProposalResponse> responses;
+        long startTime = System.nanoTime();
+        try {
+            responses = channel.sendTransactionProposal(request, peers);
+        } catch (ProposalException e) {
+            recordFailure(peers);
+            throw new PeerUnavailableException("Sending transaction proposal '" + request.getFcn() + "' failed!", e);
+        } catch (InvalidArgumentException e) {
+            throw new BlockchainException("Invalid transaction proposal '" + request.getFcn() + "'!", e);
+        } catch (RuntimeException e) {
+            recordFailure(peers);
+            throw e;
+        }
+
+        collect("Transaction proposal '" + request.getFcn() + "'", peers, responses, startTime);
+
+        //Same check as BlockchainConnector, divergent endorsements must not be sent to orderer
+        try {
+            return EndorsementValidator.validate(connector.getEndorsementPolicy(), peers, responses);
+        } catch (BlockchainException e) {
+            if (responses.size() < peers.size() || hasUnreachedPeer(responses)) {
+                //Policy may be satisfied when the missing peers answer
+                throw new PeerUnavailableException(e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    private static boolean hasUnreachedPeer(Collection<ProposalResponse> responses) {
+        for (ProposalResponse response : responses) {
+            if (response.getProposalResponse() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get healthy peers of given peers, best first. If all peers are ejected, all of them are returned.
+     */
+    private List<Peer> selectPeers(Collection<Peer> peers) {
+        return connector.getPeerSelector().selectHealthy(peers, Peer::getName);
+    }
+
+    /**
+     * Record result of every peer to peer statistics and return successful responses. Response without proposal
+     * response means the peer was not reached, otherwise the peer is healthy even if chaincode returned an error.
+     */
+    private List<ProposalResponse> collect(String operation, List<Peer> peers, Collection<ProposalResponse> responses, long startTime) throws BlockchainException {
+
+        PeerStatisticsRegistry statistics = connector.getPeerStatistics();
+        //SDK returns when every peer has answered, so every peer is recorded with latency of the whole call
+        long latency = System.nanoTime() - startTime;
+
+        Map<String, Peer> unanswered = new HashMap<>();
+        for (Peer peer : peers) {
+            unanswered.put(peer.getName(), peer);
+        }
+
+        List<ProposalResponse> successful = new ArrayList<>();
+        String chaincodeError = null;
+        String peerError = null;
+
+        for (ProposalResponse response : responses) {
+            String peerName = response.getPeer().getName();
+            unanswered.remove(peerName);
+
+            if (response.getProposalResponse() == null) {
+                statistics.get(peerName).recordFailure();
+                peerError = "peer " + peerName + ": " + response.getMessage();
+                continue;
+            }
+            statistics.get(peerName).recordSuccess(latency);
+
+            if (response.getStatus() == ChaincodeResponse.Status.SUCCESS) {
+                successful.add(response);
+            } else {
+                chaincodeError = "peer " + peerName + ": " + response.getMessage();
+            }
+        }
+        recordFailure(unanswered.values());
+
+        if (!successful.isEmpty()) {
+            return successful;
+        }
+        if (chaincodeError != null) {
+            throw new BlockchainException(operation + " was rejected by chaincode, " + chaincodeError);
+        }
+        throw new PeerUnavailableException(operation + " received no response" + (peerError != null ? ", " + peerError : ""));
+    }
+
+    private void recordFailure(Collection<Peer> peers) {
+        for (Peer peer : peers) {
+            connector.getPeerStatistics().get(peer.getName()).recordFailure();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.resilience;
+
+/**
+ * Limits retries to a fraction of requests, so that retries can't multiply the load on peers during an outage.
+ * Every request deposits retryRatio tokens to the budget, and every retry withdraws one. The balance is capped,
+ * so a long calm period doesn't buy an unlimited burst of retries later.
+ */
+public class RetryBudget {
+
+    public static final double DEFAULT_RETRY_RATIO = 0.2;
+    public static final double DEFAULT_MAX_TOKENS = 10;
+
+    private final double retryRatio;
+    private final double maxTokens;
+
+    //Guarded by this
+    private double tokens;
+
+    public RetryBudget() {
+        this(DEFAULT_RETRY_RATIO, DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * @param retryRatio Retries allowed per request in the long run, for example 0.2 allows one retry per five requests.
+     * @param maxTokens Maximum amount of retries that can be saved up. Budget starts full.
+     */
+    public RetryBudget(double retryRatio, double maxTokens) {
+        if (retryRatio < 0 || maxTokens < 1) {
+            throw new IllegalArgumentException("Invalid retry budget! retryRatio: " + retryRatio + ", maxTokens: " + maxTokens);
+        }
+        this.retryRatio = retryRatio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Record new request, not counting its retries.
+     */
+    public synchronized void recordRequest() {
+        tokens = Math.min(maxTokens, tokens + retryRatio);
+    }
+
+    /**
+     * Withdraw one retry from the budget.
+     * @return False if the budget is exhausted and the request should fail instead of retrying.
+     */
+    public synchronized boolean tryRetry() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+}
@@ -28,9 +28,8 @@
 
 package com.propentus.smartlog.datasource.couchdb;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.propentus.common.exception.ConfigurationException;
+import com.propentus.common.util.EntityUtil;
 import com.propentus.common.util.StringUtil;
 import com.propentus.iot.configs.OrganisationConfiguration;
 import org.ektorp.CouchDbConnector;
@@ -92,8 +91,7 @@ public class CouchDBProvider {
     }
     
     private String serialize(Object o) {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        return gson.toJson(o);
+        return EntityUtil.ObjectToJson(o);
     }
 
     private boolean validate()  {
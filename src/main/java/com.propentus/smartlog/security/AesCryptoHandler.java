@@ -34,23 +34,51 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 import java.security.Security;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Offers methods for AES encryption and decryption. Encrypting keys are generated at random.
+ *
+ * Cipher instances are reused per thread, so methods can be called from many threads concurrently without
+ * looking up the cipher from security providers on every call. byte[] and ByteBuffer methods skip the
+ * Base64 and String conversions of the String methods, and stream methods can be used for large payloads.
+ * All methods produce and accept the same AES/CBC/PKCS5Padding ciphertexts, except the GCM methods used by
+ * version 2 of {@link MessageEnvelope}.
  */
 public class AesCryptoHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(AesCryptoHandler.class);
 
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5PADDING";
+
     //Static because we need this for encryption and decryption. Otherwise we would need to keep this value somewhere.
     // SHOULD NOT BE CHANGED EVER! Or else we cannot decrypt older messages
     private static final String INIT_VECTOR = "RandomInitVector";
 
+    private static final IvParameterSpec DEFAULT_IV = new IvParameterSpec(INIT_VECTOR.getBytes(StandardCharsets.UTF_8));
+
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(AesCryptoHandler::newCipher);
+
+    private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    public static final int GCM_IV_LENGTH = 12;
+    public static final int GCM_TAG_LENGTH = 16;
+
+    private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> newCipher(GCM_TRANSFORMATION));
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
     static {
         Security.addProvider(new BouncyCastleProvider());
     }
@@ -75,25 +103,10 @@ public class AesCryptoHandler {
      */
     public String encrypt() {
 
-        logger.debug("Trying to encrypt data:" + this.value);
+        //Generate secret key randomly
+        this.secretKey = generateRandomKey();
 
-        try {
-            IvParameterSpec iv = new IvParameterSpec(initVector.getBytes(StandardCharsets.UTF_8));
-
-            //Generate secret key randomly
-            this.secretKey = generateRandomKey();
-
-            SecretKeySpec skeySpec = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-            cipher.init(Cipher.ENCRYPT_MODE, skeySpec, iv);
-
-            byte[] encrypted = cipher.doFinal(this.value.getBytes());
-            return Base64.encodeBase64String(encrypted);
-        } catch (Exception ex) {
-            logger.error(ex.getMessage(), ex);
-            throw new RuntimeException("Couldn't encrypt data for sending! This is fatal and should never happen");
-        }
+        return encrypt(this.secretKey);
     }
 
     /**
@@ -104,17 +117,10 @@ public class AesCryptoHandler {
 
         this.secretKey = key;
 
-        logger.info("Trying to encrypt data:" + this.value);
+        logger.debug("Trying to encrypt data of {} characters", this.value.length());
 
         try {
-            IvParameterSpec iv = new IvParameterSpec(initVector.getBytes(StandardCharsets.UTF_8));
-
-            SecretKeySpec skeySpec = new SecretKeySpec(this.secretKey.getBytes(StandardCharsets.UTF_8), "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-            cipher.init(Cipher.ENCRYPT_MODE, skeySpec, iv);
-
-            byte[] encrypted = cipher.doFinal(this.value.getBytes());
+            byte[] encrypted = doFinal(Cipher.ENCRYPT_MODE, toKeyBytes(this.secretKey), initVector(initVector), this.value.getBytes());
             return Base64.encodeBase64String(encrypted);
         } catch (Exception ex) {
             logger.error(ex.getMessage(), ex);
@@ -133,21 +139,7 @@ public class AesCryptoHandler {
      * @return
      */
     public static String decrypt(String key, String encrypted) {
-        try {
-            IvParameterSpec iv = new IvParameterSpec(initVector.getBytes(StandardCharsets.UTF_8));
-            SecretKeySpec skeySpec = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-            cipher.init(Cipher.DECRYPT_MODE, skeySpec, iv);
-
-            byte[] original = cipher.doFinal(Base64.decodeBase64(encrypted));
-
-            return new String(original);
-        } catch (Exception ex) {
-            logger.error(ex.getMessage(), ex);
-        }
-
-        return null;
+        return decrypt(key, initVector, encrypted);
     }
 
     /**
@@ -159,16 +151,7 @@ public class AesCryptoHandler {
      */
     public static String encrypt(String key, String initVector, String value) {
         try {
-            IvParameterSpec iv = new IvParameterSpec(initVector.getBytes(StandardCharsets.UTF_8));
-            SecretKeySpec skeySpec = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-            cipher.init(Cipher.ENCRYPT_MODE, skeySpec, iv);
-
-            byte[] encrypted = cipher.doFinal(value.getBytes());
-            System.out.println("encrypted string: "
-                    + Base64.encodeBase64String(encrypted));
-
+            byte[] encrypted = doFinal(Cipher.ENCRYPT_MODE, toKeyBytes(key), initVector(initVector), value.getBytes());
             return Base64.encodeBase64String(encrypted);
         } catch (Exception ex) {
             logger.error(ex.getMessage(), ex);
@@ -179,14 +162,7 @@ public class AesCryptoHandler {
 
     public static String decrypt(String key, String initVector, String encrypted) {
         try {
-            IvParameterSpec iv = new IvParameterSpec(initVector.getBytes(StandardCharsets.UTF_8));
-            SecretKeySpec skeySpec = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "AES");
-
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-            cipher.init(Cipher.DECRYPT_MODE, skeySpec, iv);
-
-            byte[] original = cipher.doFinal(Base64.decodeBase64(encrypted));
-
+            byte[] original = doFinal(Cipher.DECRYPT_MODE, toKeyBytes(key), initVector(initVector), Base64.decodeBase64(encrypted));
             return new String(original);
         } catch (Exception ex) {
             logger.error(ex.getMessage(), ex);
@@ -196,25 +172,192 @@ public class AesCryptoHandler {
     }
 
     /**
-     * Generate password of 128 bit. This means 16 UTF-8 characters.
-     * Random key character generator uses ASCII table range 33 - 125
+     * Encrypt bytes with given 16 byte AES-key.
+     * @param key
+     * @param plaintext
+     * @return Encrypted bytes, not Base64 encoded.
+     * @throws GeneralSecurityException
+     */
+    public static byte[] encrypt(byte[] key, byte[] plaintext) throws GeneralSecurityException {
+        return doFinal(Cipher.ENCRYPT_MODE, key, initVector(initVector), plaintext);
+    }
+
+    /**
+     * Decrypt bytes with given 16 byte AES-key.
+     * @param key
+     * @param encrypted Encrypted bytes, not Base64 encoded.
      * @return
+     * @throws GeneralSecurityException
      */
-    public static String generateRandomKey() {
-        String key = "";
-        for(int i = 0; i < 16; i++) {
-            int randomNum = ThreadLocalRandom.current().nextInt(33, 125);
-            char character = (char)Integer.parseInt(String.valueOf(randomNum));
-            String keyPart = String.valueOf(character);
-            key += keyPart;
-        }
+    public static byte[] decrypt(byte[] key, byte[] encrypted) throws GeneralSecurityException {
+        return doFinal(Cipher.DECRYPT_MODE, key, initVector(initVector), encrypted);
+    }
+
+    /**
+     * Encrypt remaining bytes of input to output. Output must have room for {@link #getOutputSize(int)} bytes.
+     * @param key
+     * @param input
+     * @param output
+     * @return Amount of bytes written to output.
+     * @throws GeneralSecurityException
+     */
+    public static int encrypt(byte[] key, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        return doFinal(Cipher.ENCRYPT_MODE, key, input, output);
+    }
 
-        if(key.length() != 16) {
-            logger.error("Generated AES was invalid size!");
-            logger.error("Key:" + key + " and size:" + key.length());
+    /**
+     * Decrypt remaining bytes of input to output. Output must have room for input.remaining() bytes.
+     * @param key
+     * @param input
+     * @param output
+     * @return Amount of bytes written to output.
+     * @throws GeneralSecurityException
+     */
+    public static int decrypt(byte[] key, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        return doFinal(Cipher.DECRYPT_MODE, key, input, output);
+    }
+
+    /**
+     * Size of encrypted output for given plaintext size, including padding.
+     * @param plaintextLength
+     * @return
+     */
+    public static int getOutputSize(int plaintextLength) {
+        return (plaintextLength / 16 + 1) * 16;
+    }
+
+    /**
+     * Wrap stream so that everything written to it is encrypted to given output stream.
+     * Stream must be closed to write the last padded block. Wrap output to
+     * {@link org.apache.commons.codec.binary.Base64OutputStream} to produce same Base64 text as String methods.
+     * @param key
+     * @param output
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public static OutputStream encryptingStream(byte[] key, OutputStream output) throws GeneralSecurityException {
+        //Stream keeps the cipher for its whole lifetime, so it cannot use the thread's shared cipher
+        Cipher cipher = newCipher();
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), initVector(initVector));
+        return new CipherOutputStream(output, cipher);
+    }
+
+    /**
+     * Wrap stream so that everything read from it is decrypted from given input stream.
+     * Wrap input to {@link org.apache.commons.codec.binary.Base64InputStream} to read Base64 text.
+     * @param key
+     * @param input
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public static InputStream decryptingStream(byte[] key, InputStream input) throws GeneralSecurityException {
+        Cipher cipher = newCipher();
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), initVector(initVector));
+        return new CipherInputStream(input, cipher);
+    }
+
+    /**
+     * Encrypt bytes with AES-GCM using random 12 byte IV. Ciphertext is authenticated, so separate MAC is not needed.
+     * @param key 16 or 32 byte AES-key, see {@link #generateKey(int)}.
+     * @param plaintext
+     * @return IV followed by ciphertext and 16 byte authentication tag.
+     * @throws GeneralSecurityException
+     */
+    public static byte[] encryptGcm(byte[] key, byte[] plaintext) throws GeneralSecurityException {
+
+        byte[] output = new byte[GCM_IV_LENGTH + plaintext.length + GCM_TAG_LENGTH];
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        SECURE_RANDOM.nextBytes(iv);
+        System.arraycopy(iv, 0, output, 0, GCM_IV_LENGTH);
+
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+        cipher.doFinal(plaintext, 0, plaintext.length, output, GCM_IV_LENGTH);
+        return output;
+    }
+
+    /**
+     * Decrypt output of {@link #encryptGcm(byte[], byte[])}.
+     * @param key
+     * @param encrypted IV followed by ciphertext and authentication tag.
+     * @return
+     * @throws GeneralSecurityException If key is wrong or ciphertext has been modified.
+     */
+    public static byte[] decryptGcm(byte[] key, byte[] encrypted) throws GeneralSecurityException {
+        if (encrypted.length < GCM_IV_LENGTH + GCM_TAG_LENGTH) {
+            throw new GeneralSecurityException("Encrypted data is too short for AES-GCM: " + encrypted.length + " bytes");
         }
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(GCM_TAG_LENGTH * 8, encrypted, 0, GCM_IV_LENGTH));
+        return cipher.doFinal(encrypted, GCM_IV_LENGTH, encrypted.length - GCM_IV_LENGTH);
+    }
 
+    /**
+     * Generate random binary AES-key.
+     * @param bits 128 or 256
+     * @return
+     */
+    public static byte[] generateKey(int bits) {
+        if (bits != 128 && bits != 256) {
+            throw new IllegalArgumentException("AES key must be 128 or 256 bits, was: " + bits);
+        }
+        byte[] key = new byte[bits / 8];
+        SECURE_RANDOM.nextBytes(key);
         return key;
     }
 
-}
\ No newline at end of file
+    /**
+     * Key bytes of String key, as used by String methods.
+     * @param key
+     * @return
+     */
+    public static byte[] toKeyBytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] doFinal(int mode, byte[] key, IvParameterSpec iv, byte[] input) throws GeneralSecurityException {
+        Cipher cipher = CIPHER.get();
+        cipher.init(mode, new SecretKeySpec(key, "AES"), iv);
+        return cipher.doFinal(input);
+    }
+
+    private static int doFinal(int mode, byte[] key, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        Cipher cipher = CIPHER.get();
+        cipher.init(mode, new SecretKeySpec(key, "AES"), initVector(initVector));
+        return cipher.doFinal(input, output);
+    }
+
+    private static IvParameterSpec initVector(String initVector) {
+        if (INIT_VECTOR.equals(initVector)) {
+            return DEFAULT_IV;
+        }
+        return new IvParameterSpec(initVector.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cipher newCipher() {
+        return newCipher(TRANSFORMATION);
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher " + transformation + " is not available", e);
+        }
+    }
+
+    /**
+     * Generate password of 128 bit. This means 16 UTF-8 characters.
+     * Random key character generator uses ASCII table range 33 - 125
+     * @return
+     */
+    public static String generateRandomKey() {
+        char[] key = new char[16];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i = 0; i < key.length; i++) {
+            key[i] = (char) random.nextInt(33, 125);
+        }
+        return new String(key);
+    }
+
+}
@@ -32,11 +32,13 @@ import com.propentus.common.util.StringUtil;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.Base64;
 
 /**
  * Utility class for different Cryptographic methods
@@ -47,6 +49,9 @@ public class CryptoUtil {
     private static final String ENCRYPT_DECRYPT_ALG = "RSA";
     private static final String DEFAULT_ALG = "RSA";
 
+    //Base64 never contains ':', so it separates public and private key of encoded key pair
+    private static final char KEY_PAIR_SEPARATOR = ':';
+
     static {
         Security.addProvider(new BouncyCastleProvider());
     }
@@ -196,14 +201,22 @@ public class CryptoUtil {
      * @throws InvalidKeySpecException
      */
     public static PrivateKey loadPrivateKey(String path, String algorithm) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+        return loadPrivateKey(Paths.get(path), algorithm);
+    }
 
-        // Read private key
-        File filePublicKey = new File(path);
-        FileInputStream fis = new FileInputStream(path);
-        byte[] encodedPrivateKey = new byte[(int) filePublicKey.length()];
-        fis.read(encodedPrivateKey);
-        fis.close();
+    /**
+     * Load PKCS8 encoded private key from given file. Whole file is read with NIO.
+     * @param path
+     * @param algorithm
+     * @return
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException
+     */
+    public static PrivateKey loadPrivateKey(Path path, String algorithm) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
 
+        // Read private key
+        byte[] encodedPrivateKey = Files.readAllBytes(path);
 
         // Generate KeyPair.
         KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
@@ -213,77 +226,82 @@ public class CryptoUtil {
         return keyFactory.generatePrivate(privateKeySpec);
     }
 
+    /**
+     * Decode key pair encoded with {@link #keypairToString(KeyPair)}. Key pairs in legacy Java serialized format
+     * are accepted too.
+     * @param base64key
+     * @return
+     * @throws IOException If key pair can't be decoded.
+     */
     public static KeyPair base64ToKeyPair(String base64key) throws IOException, ClassNotFoundException {
-
-
-        byte[] base64 = Base64.getDecoder().decode(base64key);
-
-        ByteArrayInputStream bi = new ByteArrayInputStream(base64);
-        ObjectInputStream oi = new ObjectInputStream(bi);
-        Object obj = oi.readObject();
-
-        KeyPair keyPair = null;
-        if(obj instanceof KeyPair) {
-            keyPair = (KeyPair)obj;
+        try {
+            int separator = base64key.indexOf(KEY_PAIR_SEPARATOR);
+            if (separator < 0) {
+                return KeyCodec.getDefault().decodeSerializedKeyPair(base64key);
+            }
+            PublicKey publicKey = KeyCodec.getDefault().decodePublicKey(base64key.substring(0, separator));
+            PrivateKey privateKey = KeyCodec.getDefault().decodePrivateKey(base64key.substring(separator + 1));
+            return new KeyPair(publicKey, privateKey);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Could not decode key pair", e);
         }
-
-        oi.close();
-        bi.close();
-        return keyPair;
     }
 
+    /**
+     * Decode public key encoded with {@link #publicKeyToString(PublicKey)}. Public keys in legacy Java serialized
+     * format are accepted too. Decoded keys are cached, see {@link KeyCodec}.
+     * @param base64key
+     * @return
+     * @throws IOException If key can't be decoded.
+     */
     public static PublicKey base64ToPublicKey(String base64key) throws IOException, ClassNotFoundException {
-
-
-        byte[] base64 = Base64.getDecoder().decode(base64key);
-
-        ByteArrayInputStream bi = new ByteArrayInputStream(base64);
-        ObjectInputStream oi = new ObjectInputStream(bi);
-        Object obj = oi.readObject();
-
-        PublicKey publicKey = null;
-        if(obj instanceof PublicKey) {
-            publicKey = (PublicKey)obj;
+        try {
+            return KeyCodec.getDefault().decodePublicKey(base64key);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Could not decode public key", e);
         }
+    }
 
-        oi.close();
-        bi.close();
-        return publicKey;
+    /**
+     * Decode private key encoded with {@link #privateKeyToString(PrivateKey)}.
+     * @param base64key
+     * @return
+     * @throws IOException If key can't be decoded.
+     */
+    public static PrivateKey base64ToPrivateKey(String base64key) throws IOException {
+        try {
+            return KeyCodec.getDefault().decodePrivateKey(base64key);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Could not decode private key", e);
+        }
     }
 
     /**
-     * Converts keypair to base64 format String.
+     * Converts keypair to base64 format String. Public key is encoded as X.509 and private key as PKCS8,
+     * separated by ':'.
      * @param keyPair
      * @return
-     * @throws Exception
      */
-    public static String keypairToString(KeyPair keyPair) throws Exception {
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        ObjectOutputStream o =  new ObjectOutputStream(b);
-        o.writeObject(keyPair);
-        byte[] res = b.toByteArray();
-        o.close();
-        b.close();
-
-        return Base64.getEncoder().encodeToString(res);
+    public static String keypairToString(KeyPair keyPair) {
+        return KeyCodec.getDefault().encodePublicKey(keyPair.getPublic()) + KEY_PAIR_SEPARATOR
+                + KeyCodec.getDefault().encodePrivateKey(keyPair.getPrivate());
     }
 
     /**
-     * Converts PublicKey to base64 format String.
+     * Converts PublicKey to base64 format String, encoded as X.509 SubjectPublicKeyInfo.
      * @param publicKey
      * @return
-     * @throws Exception
      */
-    public static String publicKeyToString(PublicKey publicKey) throws Exception {
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        ObjectOutputStream o =  new ObjectOutputStream(b);
-        o.writeObject(publicKey);
-        byte[] res = b.toByteArray();
-        o.close();
-        b.close();
-
-        return Base64.getEncoder().encodeToString(res);
+    public static String publicKeyToString(PublicKey publicKey) {
+        return KeyCodec.getDefault().encodePublicKey(publicKey);
     }
 
-
+    /**
+     * Converts PrivateKey to base64 format String, encoded as PKCS8.
+     * @param privateKey
+     * @return
+     */
+    public static String privateKeyToString(PrivateKey privateKey) {
+        return KeyCodec.getDefault().encodePrivateKey(privateKey);
+    }
 }
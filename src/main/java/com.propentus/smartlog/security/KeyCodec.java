@@ -0,0 +1,241 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.security;
+
+import com.propentus.common.util.cache.LruMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyRep;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes keys to text for the ledger and decodes them back. Public keys are encoded as Base64 of X.509
+ * SubjectPublicKeyInfo DER, and private keys as Base64 of PKCS8 DER, same formats as key files on disk.
+ *
+ * Keys written by earlier versions as Base64 of Java serialized objects are still accepted. They are recognised from
+ * the serialization stream magic 0xACED, which can't start a DER sequence, and read with class allowlist so that
+ * only key objects can be deserialized.
+ *
+ * Decoded public keys are cached by SHA-256 of the encoded key, so the same Keystore entry is parsed only once.
+ */
+public class KeyCodec {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyCodec.class);
+
+    private static final int DEFAULT_CACHE_MAX_SIZE = 10000;
+
+    private static final String[] ALGORITHMS = { "RSA", "EC" };
+
+    private static final KeyCodec DEFAULT_INSTANCE = new KeyCodec(DEFAULT_CACHE_MAX_SIZE);
+
+    //Classes allowed in legacy Java serialized keys. Classes implementing java.security.Key are allowed too.
+    private static final Set<String> SERIALIZED_KEY_CLASSES = new HashSet<>(Arrays.asList(
+            KeyRep.class.getName(),
+            KeyRep.Type.class.getName(),
+            KeyPair.class.getName(),
+            Enum.class.getName(),
+            Number.class.getName(),
+            BigInteger.class.getName(),
+            "[B"));
+
+    private final Map<String, PublicKey> publicKeys;
+
+    public KeyCodec(int maxSize) {
+        this.publicKeys = new LruMap<>(maxSize);
+    }
+
+    /**
+     * Get shared codec instance.
+     * @return
+     */
+    public static KeyCodec getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    public String encodePublicKey(PublicKey publicKey) {
+        return Base64.getEncoder().encodeToString(publicKey.getEncoded());
+    }
+
+    public String encodePrivateKey(PrivateKey privateKey) {
+        return Base64.getEncoder().encodeToString(privateKey.getEncoded());
+    }
+
+    /**
+     * Decode public key of either format. Result is cached.
+     * @param encodedKey
+     * @return
+     * @throws GeneralSecurityException If key can't be decoded.
+     */
+    public PublicKey decodePublicKey(String encodedKey) throws GeneralSecurityException {
+
+        String hash = contentHash(encodedKey);
+        PublicKey cached;
+        synchronized (publicKeys) {
+            cached = publicKeys.get(hash);
+        }
+        if (cached != null) {
+            return cached;
+        }
+
+        byte[] bytes = Base64.getDecoder().decode(encodedKey);
+        PublicKey publicKey;
+        if (isSerialized(bytes)) {
+            publicKey = readSerialized(bytes, PublicKey.class);
+        } else {
+            publicKey = generate(bytes, true, PublicKey.class);
+        }
+
+        synchronized (publicKeys) {
+            publicKeys.put(hash, publicKey);
+        }
+        return publicKey;
+    }
+
+    /**
+     * Decode private key of either format. Private keys are not cached.
+     * @param encodedKey
+     * @return
+     * @throws GeneralSecurityException If key can't be decoded.
+     */
+    public PrivateKey decodePrivateKey(String encodedKey) throws GeneralSecurityException {
+        byte[] bytes = Base64.getDecoder().decode(encodedKey);
+        if (isSerialized(bytes)) {
+            return readSerialized(bytes, PrivateKey.class);
+        }
+        return generate(bytes, false, PrivateKey.class);
+    }
+
+    /**
+     * Read legacy Java serialized KeyPair.
+     * @param encodedKeyPair
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public KeyPair decodeSerializedKeyPair(String encodedKeyPair) throws GeneralSecurityException {
+        return readSerialized(Base64.getDecoder().decode(encodedKeyPair), KeyPair.class);
+    }
+
+    public void invalidateAll() {
+        synchronized (publicKeys) {
+            publicKeys.clear();
+        }
+    }
+
+    /**
+     * True if bytes start with Java serialization stream magic.
+     * @param bytes
+     * @return
+     */
+    public static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+    }
+
+    private static <T> T generate(byte[] der, boolean publicKey, Class<T> type) throws GeneralSecurityException {
+        GeneralSecurityException failure = null;
+        for (String algorithm : ALGORITHMS) {
+            try {
+                KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
+                Key key = publicKey ? keyFactory.generatePublic(new X509EncodedKeySpec(der))
+                        : keyFactory.generatePrivate(new PKCS8EncodedKeySpec(der));
+                return type.cast(key);
+            } catch (GeneralSecurityException e) {
+                failure = e;
+            }
+        }
+        throw new GeneralSecurityException("Key is not valid " + (publicKey ? "X.509" : "PKCS8") + " encoded key", failure);
+    }
+
+    private static <T> T readSerialized(byte[] bytes, Class<T> type) throws GeneralSecurityException {
+        logger.debug("Reading legacy Java serialized {}", type.getSimpleName());
+        try (ObjectInputStream in = new KeyObjectInputStream(new ByteArrayInputStream(bytes))) {
+            Object object = in.readObject();
+            if (!type.isInstance(object)) {
+                throw new GeneralSecurityException("Serialized object is not " + type.getSimpleName());
+            }
+            return type.cast(object);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new GeneralSecurityException("Could not read serialized " + type.getSimpleName(), e);
+        }
+    }
+
+    private static String contentHash(String encodedKey) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        int length = encodedKey.length();
+        for (int i = 0; i < length; i++) {
+            //Base64 is ASCII, so each character is one byte
+            digest.update((byte) encodedKey.charAt(i));
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * ObjectInputStream that refuses to load anything but key classes.
+     */
+    private static class KeyObjectInputStream extends ObjectInputStream {
+
+        KeyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            String name = description.getName();
+            if (SERIALIZED_KEY_CLASSES.contains(name)) {
+                return super.resolveClass(description);
+            }
+            Class<?> type = Class.forName(name, false, getClass().getClassLoader());
+            if (Key.class.isAssignableFrom(type)) {
+                return super.resolveClass(description);
+            }
+            throw new InvalidClassException(name, "Class is not allowed in serialized key");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.security;
+
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * Format of encrypted UBL message content. Content is encrypted with random secret key, which is encrypted with RSA
+ * for every participant.
+ *
+ * Version 1: Base64 of AES-CBC ciphertext with fixed IV. Secret key is 16 ASCII characters.
+ * Version 2: "v2:" followed by Base64 of random 12 byte IV, AES-GCM ciphertext and authentication tag. Secret key
+ * is 16 or 32 random bytes.
+ *
+ * Base64 never contains ':', so the prefix can't appear in version 1 messages. Both versions can be decrypted,
+ * new messages should be encrypted with version 2.
+ */
+public class MessageEnvelope {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageEnvelope.class);
+
+    public static final String V2_PREFIX = "v2:";
+
+    public static final int DEFAULT_KEY_BITS = 256;
+
+    /**
+     * Generate secret key for version 2 message.
+     * @return
+     */
+    public static byte[] generateKey() {
+        return AesCryptoHandler.generateKey(DEFAULT_KEY_BITS);
+    }
+
+    /**
+     * Encrypt content as version 2 message.
+     * @param key Key from {@link #generateKey()}
+     * @param plaintext
+     * @return
+     */
+    public static String encrypt(byte[] key, String plaintext) {
+        try {
+            byte[] encrypted = AesCryptoHandler.encryptGcm(key, plaintext.getBytes(StandardCharsets.UTF_8));
+            return V2_PREFIX + Base64.encodeBase64String(encrypted);
+        } catch (GeneralSecurityException ex) {
+            logger.error(ex.getMessage(), ex);
+            throw new RuntimeException("Couldn't encrypt data for sending! This is fatal and should never happen");
+        }
+    }
+
+    /**
+     * Decrypt message of either version.
+     * @param key Secret key bytes, as returned by {@link RsaCryptoHandler#unwrapKey}.
+     * @param encryptedMessage
+     * @return Decrypted content, or null if decryption failed.
+     */
+    public static String decrypt(byte[] key, String encryptedMessage) {
+        try {
+            if (isVersion2(encryptedMessage)) {
+                byte[] encrypted = Base64.decodeBase64(encryptedMessage.substring(V2_PREFIX.length()));
+                return new String(AesCryptoHandler.decryptGcm(key, encrypted), StandardCharsets.UTF_8);
+            }
+            //Version 1 content was decoded with platform charset, keep doing so
+            return new String(AesCryptoHandler.decrypt(key, Base64.decodeBase64(encryptedMessage)));
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+
+        return null;
+    }
+
+    public static boolean isVersion2(String encryptedMessage) {
+        return encryptedMessage != null && encryptedMessage.startsWith(V2_PREFIX);
+    }
+}
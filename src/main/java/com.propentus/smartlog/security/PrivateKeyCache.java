@@ -0,0 +1,158 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.security;
+
+import com.propentus.common.util.cache.LruMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Map;
+
+/**
+ * Cache for decoded private keys, keyed by key file path. Cached key is reused as long as modification time and size
+ * of the key file stay the same, so replaced key files are picked up without restart. Cache is bounded, least recently
+ * used keys are evicted when there are more than maxSize key files, like with many tenant domains in cloud mode.
+ */
+public class PrivateKeyCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrivateKeyCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final PrivateKeyCache DEFAULT_INSTANCE = new PrivateKeyCache(DEFAULT_MAX_SIZE);
+
+    /**
+     * Decoded private key and RSA ciphers initialised with it.
+     */
+    public static class KeyMaterial {
+
+        private final PrivateKey privateKey;
+        private final long lastModified;
+        private final long size;
+        private final ThreadLocal<Cipher> decryptCipher;
+
+        KeyMaterial(final PrivateKey privateKey, long lastModified, long size) {
+            this.privateKey = privateKey;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.decryptCipher = ThreadLocal.withInitial(() -> {
+                try {
+                    return RsaCryptoHandler.createDecryptCipher(privateKey);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Couldn't initialise RSA cipher for private key", e);
+                }
+            });
+        }
+
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        public KeyPair getKeyPair() {
+            return new KeyPair(null, privateKey);
+        }
+
+        /**
+         * RSA cipher initialised for decryption with this key. Cipher is created once per thread and must not be
+         * shared with other threads.
+         * @return
+         */
+        public Cipher getDecryptCipher() {
+            return decryptCipher.get();
+        }
+    }
+
+    private final Map<String, KeyMaterial> keys;
+
+    public PrivateKeyCache(int maxSize) {
+        this.keys = new LruMap<>(maxSize);
+    }
+
+    /**
+     * Get shared cache instance.
+     * @return
+     */
+    public static PrivateKeyCache getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Get key material for private key file in given path. Key is read and decoded only if it is not cached yet,
+     * or if the file has changed since it was cached.
+     * @param path Full path to PKCS8 encoded private key
+     * @param algorithm Key algorithm
+     * @return
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException
+     */
+    public KeyMaterial get(String path, String algorithm) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+
+        Path file = Paths.get(path);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        long size = Files.size(file);
+
+        KeyMaterial cached;
+        synchronized (keys) {
+            cached = keys.get(path);
+        }
+        if (cached != null && cached.lastModified == lastModified && cached.size == size) {
+            return cached;
+        }
+
+        logger.debug("Loading private key from '{}'", path);
+        KeyMaterial loaded = new KeyMaterial(CryptoUtil.loadPrivateKey(path, algorithm), lastModified, size);
+        synchronized (keys) {
+            keys.put(path, loaded);
+        }
+        return loaded;
+    }
+
+    public void invalidate(String path) {
+        synchronized (keys) {
+            keys.remove(path);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (keys) {
+            keys.clear();
+        }
+    }
+}
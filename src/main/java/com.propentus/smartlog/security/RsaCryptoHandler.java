@@ -50,6 +50,9 @@ public class RsaCryptoHandler {
     private static final String ENCRYPT_DECRYPT_ALG = "RSA";
     private static final String DEFAULT_ALG = "RSA";
 
+    //Cipher lookup is reused per thread, only initialisation with the recipient's key is done on every wrap
+    private static final ThreadLocal<Cipher> ENCRYPT_CIPHER = new ThreadLocal<>();
+
     static {
         Security.addProvider(new BouncyCastleProvider());
     }
@@ -91,6 +94,54 @@ public class RsaCryptoHandler {
         return null;
     }
 
+    /**
+     * Encrypt binary secret key with given public key.
+     * @param key
+     * @param publicKey
+     * @return Base64 encoded encrypted key.
+     * @throws GeneralSecurityException
+     */
+    public static String wrapKey(byte[] key, PublicKey publicKey) throws GeneralSecurityException {
+        Cipher encryptor = ENCRYPT_CIPHER.get();
+        if (encryptor == null) {
+            encryptor = Cipher.getInstance(ENCRYPT_DECRYPT_ALG);
+            ENCRYPT_CIPHER.set(encryptor);
+        }
+        encryptor.init(Cipher.ENCRYPT_MODE, publicKey);
+        return Base64.encodeBase64String(encryptor.doFinal(key));
+    }
+
+    /**
+     * Decrypt secret key with already initialised cipher. Works for both binary keys encrypted with
+     * {@link #wrapKey(byte[], PublicKey)} and String keys encrypted with {@link #encrypt(String, KeyPair)}, in which case
+     * the result is the UTF-8 bytes of the key.
+     * @param encryptedKey Base64 encoded encrypted key.
+     * @param decryptor Cipher created with {@link #createDecryptCipher(PrivateKey)}
+     * @return Key bytes, or null if decryption failed.
+     */
+    public static byte[] unwrapKey(String encryptedKey, Cipher decryptor) {
+        try {
+            return decryptor.doFinal(Base64.decodeBase64(encryptedKey));
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Create RSA cipher initialised for decryption with given private key.
+     * @param privateKey
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public static Cipher createDecryptCipher(PrivateKey privateKey) throws GeneralSecurityException {
+        Cipher decryptor = Cipher.getInstance(ENCRYPT_DECRYPT_ALG);
+        decryptor.init(Cipher.DECRYPT_MODE, privateKey);
+        return decryptor;
+    }
+
     /**
      *  Generate certificate dynamically
      */
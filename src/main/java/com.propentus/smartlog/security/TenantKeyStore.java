@@ -0,0 +1,355 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.security;
+
+import com.propentus.common.util.cache.LruMap;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Private keys of tenant organisations in cloud mode. Key of each tenant domain is stored in
+ * '{cloudKeyPath}/{domainName}/crypto-config/private.key'.
+ *
+ * The key directory is indexed when the store is created and watched with WatchService after that, so changed,
+ * added and removed key files are noticed without touching the file system on every request. Decoded keys are kept
+ * in a bounded LRU, warm lookups are a single map access. If the file system doesn't support watching, keys are
+ * resolved through {@link PrivateKeyCache}, which checks the key file on every lookup instead.
+ *
+ * If the key directory can't be indexed, for example it doesn't exist yet, {@link #forCloudKeyPath(String)} returns
+ * a store that is not indexed or watched and resolves every key through PrivateKeyCache.
+ */
+public class TenantKeyStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantKeyStore.class);
+
+    public static final String KEY_DIRECTORY = "crypto-config";
+    public static final String KEY_FILE_NAME = "private.key";
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final String ALGORITHM = "RSA";
+
+    private static final Map<Path, TenantKeyStore> INSTANCES = new HashMap<>();
+
+    private final Path root;
+    private final Set<String> domains = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private final Map<String, PrivateKeyCache.KeyMaterial> keys;
+    private final WatchService watchService;
+    private final ExecutorService watchExecutor;
+    private volatile boolean watching;
+
+    //Guarded by keys, incremented on every invalidation so keys loaded before it are not cached
+    private long generation = 0;
+
+    /**
+     * Index key directory and start watching it.
+     * @param cloudKeyPath Directory containing one sub directory per tenant domain
+     * @param maxSize Maximum amount of decoded keys kept in memory
+     * @throws IOException If key directory can't be read
+     */
+    public TenantKeyStore(String cloudKeyPath, int maxSize) throws IOException {
+        this(cloudKeyPath, maxSize, true);
+    }
+
+    private TenantKeyStore(String cloudKeyPath, int maxSize, boolean index) throws IOException {
+        this.root = Paths.get(cloudKeyPath).toAbsolutePath().normalize();
+        this.keys = new LruMap<>(maxSize);
+
+        if (!index) {
+            this.watchService = null;
+            this.watchExecutor = null;
+            this.watching = false;
+            return;
+        }
+
+        WatchService service = null;
+        try {
+            service = root.getFileSystem().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Watching key directory '{}' is not supported, key files are checked on every lookup", root, e);
+        }
+        this.watchService = service;
+
+        try {
+            reindex();
+        } catch (IOException | RuntimeException e) {
+            //Store is not returned to anyone, so nobody else can close the watch service
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+            }
+            throw e;
+        }
+
+        watching = watchService != null;
+        if (watching) {
+            watchExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("tenant-key-watch"));
+            watchExecutor.execute(this::watch);
+        } else {
+            watchExecutor = null;
+        }
+        logger.info("Indexed {} tenant keys in '{}'", domains.size(), root);
+    }
+
+    /**
+     * Get shared store for given cloud key directory. Store is created on first call. If the directory can't be
+     * indexed, the shared store resolves keys without index, so the directory is not indexed again on every call.
+     * @param cloudKeyPath
+     * @return
+     * @throws IOException
+     */
+    public static TenantKeyStore forCloudKeyPath(String cloudKeyPath) throws IOException {
+        Path path = Paths.get(cloudKeyPath).toAbsolutePath().normalize();
+        synchronized (INSTANCES) {
+            TenantKeyStore store = INSTANCES.get(path);
+            if (store == null) {
+                try {
+                    store = new TenantKeyStore(cloudKeyPath, DEFAULT_MAX_SIZE);
+                } catch (IOException e) {
+                    logger.warn("Indexing key directory '{}' failed, key files are checked on every lookup", path, e);
+                    store = new TenantKeyStore(cloudKeyPath, DEFAULT_MAX_SIZE, false);
+                }
+                INSTANCES.put(path, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Get key material of given tenant domain. Key file is read and decoded only on first lookup, and again after
+     * the file has changed.
+     * @param domainName
+     * @return
+     * @throws NoSuchFileException If domain has no key file
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeySpecException
+     */
+    public PrivateKeyCache.KeyMaterial get(String domainName) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+
+        if (!watching) {
+            return PrivateKeyCache.getDefault().get(resolveKeyFile(domainName).toString(), ALGORITHM);
+        }
+
+        //Only validated domain names are cached, so cache hits don't need to resolve the path
+        long loadGeneration;
+        synchronized (keys) {
+            PrivateKeyCache.KeyMaterial cached = keys.get(domainName);
+            if (cached != null) {
+                return cached;
+            }
+            loadGeneration = generation;
+        }
+
+        Path keyFile = resolveKeyFile(domainName);
+
+        //Key file may have been added after last watch event was handled, so unknown domains are checked from disk
+        if (!domains.contains(domainName) && !Files.isRegularFile(keyFile)) {
+            throw new NoSuchFileException(keyFile.toString(), null, "No private key for domain '" + domainName + "'");
+        }
+
+        logger.debug("Loading private key of domain '{}' from '{}'", domainName, keyFile);
+        BasicFileAttributes attributes = Files.readAttributes(keyFile, BasicFileAttributes.class);
+        PrivateKeyCache.KeyMaterial loaded = new PrivateKeyCache.KeyMaterial(CryptoUtil.loadPrivateKey(keyFile, ALGORITHM),
+                attributes.lastModifiedTime().toMillis(), attributes.size());
+
+        synchronized (keys) {
+            if (generation == loadGeneration) {
+                keys.put(domainName, loaded);
+                domains.add(domainName);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Is there a key file for given domain.
+     * @param domainName
+     * @return
+     */
+    public boolean hasDomain(String domainName) {
+        return domains.contains(domainName);
+    }
+
+    /**
+     * Amount of tenant domains with key file.
+     * @return
+     */
+    public int size() {
+        return domains.size();
+    }
+
+    public void invalidate(String domainName) {
+        synchronized (keys) {
+            keys.remove(domainName);
+            generation++;
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (keys) {
+            keys.clear();
+            generation++;
+        }
+    }
+
+    /**
+     * Stop watching key directory. Keys are still resolved after closing, but through {@link PrivateKeyCache}.
+     */
+    @Override
+    public void close() {
+        watching = false;
+        synchronized (INSTANCES) {
+            INSTANCES.remove(root, this);
+        }
+        if (watchService != null) {
+            closeWatchService();
+            watchExecutor.shutdownNow();
+        }
+    }
+
+    private Path resolveKeyFile(String domainName) throws NoSuchFileException {
+        Path domainDirectory = domainName != null ? root.resolve(domainName).normalize() : null;
+        //Domain name comes from the user, don't let it point outside the key directory
+        if (domainDirectory == null || !root.equals(domainDirectory.getParent())) {
+            throw new NoSuchFileException(String.valueOf(domainName), null, "Invalid domain name");
+        }
+        return domainDirectory.resolve(KEY_DIRECTORY).resolve(KEY_FILE_NAME);
+    }
+
+    private void reindex() throws IOException {
+        domains.clear();
+        register(root);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path domainDirectory : stream) {
+                refreshDomain(domainDirectory.getFileName().toString());
+            }
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Update index and watches of one domain after its directory has changed.
+     */
+    private void refreshDomain(String domainName) {
+        Path domainDirectory = root.resolve(domainName);
+        Path keyDirectory = domainDirectory.resolve(KEY_DIRECTORY);
+        try {
+            if (Files.isDirectory(domainDirectory)) {
+                register(domainDirectory);
+            }
+            if (Files.isDirectory(keyDirectory)) {
+                register(keyDirectory);
+            }
+        } catch (IOException e) {
+            logger.warn("Couldn't watch key directory of domain '{}'", domainName, e);
+        }
+
+        if (Files.isRegularFile(keyDirectory.resolve(KEY_FILE_NAME))) {
+            domains.add(domainName);
+        } else {
+            domains.remove(domainName);
+        }
+        invalidate(domainName);
+    }
+
+    private void register(Path directory) throws IOException {
+        if (watchService != null) {
+            WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.put(key, directory);
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = watchedDirectories.get(key);
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                        logger.debug("Key directory events were lost, indexing '{}' again", root);
+                        reindex();
+                        continue;
+                    }
+                    Path changed = directory.resolve((Path) event.context());
+                    Path relative = root.relativize(changed);
+                    if (relative.getNameCount() > 0) {
+                        refreshDomain(relative.getName(0).toString());
+                    }
+                }
+
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Stopped watching key directory '{}'", root);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Watching key directory '{}' failed, key files are checked on every lookup from now on", root, e);
+            watching = false;
+            closeWatchService();
+        }
+    }
+
+    private void closeWatchService() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Closing watch service of '{}' failed", root, e);
+        }
+    }
+}
@@ -29,26 +29,33 @@
 package com.propentus.smartlog.util;
 
 import com.propentus.common.exception.ConfigurationException;
-import com.propentus.common.util.DataFormatter;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
 import com.propentus.iot.BlockchainConnector;
 import com.propentus.iot.chaincode.model.UBLChaincodeTO;
-import com.propentus.iot.configs.ConfigReader;
 import com.propentus.iot.configs.OrganisationConfiguration;
 import com.propentus.smartlog.datasource.couchdb.entities.ApiUser;
-import com.propentus.smartlog.security.AesCryptoHandler;
-import com.propentus.smartlog.security.CryptoUtil;
+import com.propentus.smartlog.security.MessageEnvelope;
+import com.propentus.smartlog.security.PrivateKeyCache;
 import com.propentus.smartlog.security.RsaCryptoHandler;
+import com.propentus.smartlog.security.TenantKeyStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
-import java.security.PrivateKey;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
  * Decrypts encrypted UBL Messages to Strings
@@ -57,10 +64,13 @@ public class MessageDecryptor {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageDecryptor.class);
 
-    /* Template is:
-        {cloudPrivateKeyPath}/{domainName}/crypto-config/private.key
-     */
-    private static final String CLOUD_PRIVATE_KEY_PATH_TEMPLATE = "{0}/{1}/crypto-config/private.key";
+    private static final int DECRYPT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    //How many messages can be decrypted ahead of the consumer, limits memory use of large query results
+    private static final int MAX_DECRYPT_AHEAD = DECRYPT_THREADS * 8;
+
+    //Shared by all decryptors, so concurrent API calls cannot create more decrypt threads than there are cores
+    private static volatile ExecutorService decryptExecutor;
 
     private BlockchainConnector connector;
 
@@ -77,6 +87,9 @@ public class MessageDecryptor {
      * and tries to decrypt its secret key with it. If decrypt is successful, the decrypted key is then used
      * to decrypt the whole message.
      *
+     * Messages which are not meant for this organisation are skipped. Messages which are meant for it but cannot be
+     * decrypted are returned as null, so they can be told apart from the others.
+     *
      * @param messages
      * @param user
      *
@@ -92,76 +105,232 @@ public class MessageDecryptor {
 
         List<String> messageList = new ArrayList<String>();
 
-        //Check for PeerType configuration, if CLOUD type, create full path. Otherwise use configured 'privateKeyPath'.
-        ConfigReader configReader = new ConfigReader();
-        OrganisationConfiguration organisationConfiguration = configReader.getOrganisationConfiguration();
-
-        PrivateKey privateKey = null;
-        String privateKeyPath = null;
-        if(organisationConfiguration.isCloudInstallation()) {
+        DecryptionContext context = createDecryptionContext(user);
+        if (context == null) {
+            return null;
+        }
 
-            if(user == null) {
-                logger.error("ApiUser cannot be null, when querying data in cloud mode.");
-                return null;
+        for (UBLChaincodeTO message : messages) {
+            if (context.isRecipient(message)) {
+                messageList.add(context.decrypt(message));
             }
+        }
+
+        return messageList;
+    }
 
-            privateKeyPath = createCloudPrivateKeyPath(organisationConfiguration.cloudKeyPath, user.getDomainName());
+    /**
+     * Takes list of UBLChaincodeTO's as an argument, gets organizations private key from disk
+     * and tries to decrypt its secret key with it. If decrypt is successful, the decrypted key is then used
+     * to decrypt the whole message.
+     *
+     * Messages which are not meant for this organisation are skipped. Messages which are meant for it but cannot be
+     * decrypted are returned with null {@link UBLChaincodeTO#decryptedMessage}.
+     *
+     * @param messages
+     * @param user
+     * @return
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     * @throws InvalidKeySpecException
+     */
+    public List<UBLChaincodeTO> decryptAndGetAsUBLChaincodeTOList(List<UBLChaincodeTO> messages, ApiUser user) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException, ConfigurationException {
+
+        logger.debug("Decrypting crypted messages back to UBL");
+
+        List<UBLChaincodeTO> messageList = new ArrayList<UBLChaincodeTO>();
+
+        DecryptionContext context = createDecryptionContext(user);
+        if (context == null) {
+            return null;
         }
-        else {
-            privateKeyPath = connector.getConfig().privateKeyPath;
+
+        for (UBLChaincodeTO message : messages) {
+            if (context.isRecipient(message)) {
+                message.decryptedMessage = context.decrypt(message);
+                messageList.add(message);
+            }
         }
 
-        //Key path solved, load the private key now
-        privateKey = CryptoUtil.loadPrivateKey(privateKeyPath, "RSA");
-        KeyPair keyPair = new KeyPair(null, privateKey);
+        return messageList;
+    }
 
-        String ownMsp = connector.getConfig().organisation.getMspid();
+    /**
+     * Decrypts messages one at a time as they are read from the returned iterator. Nothing is decrypted before
+     * {@link Iterator#hasNext()} is called, so caller controls the pace, and encrypted content of each message is
+     * dropped after decryption. Messages which are not meant for this organisation, or which cannot be decrypted,
+     * are skipped. Decrypted content is set to {@link UBLChaincodeTO#decryptedMessage}.
+     *
+     * @param messages
+     * @param user
+     * @return Iterator of decrypted messages, or null if user is missing in cloud mode.
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     * @throws InvalidKeySpecException
+     */
+    public Iterator<UBLChaincodeTO> decryptIterator(Iterator<UBLChaincodeTO> messages, ApiUser user) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException {
 
-        if(organisationConfiguration.isCloudInstallation()) {
-            ownMsp = user.getOrganisation();
+        DecryptionContext context = createDecryptionContext(user);
+        if (context == null) {
+            return null;
         }
+        return new DecryptingIterator(messages, context);
+    }
 
-        for (UBLChaincodeTO message : messages) {
+    /**
+     * Decrypts messages one at a time on caller's thread and passes them to consumer.
+     * Next message is read from the iterator only after consumer has returned.
+     *
+     * @param messages
+     * @param user
+     * @param consumer
+     * @return Amount of messages passed to consumer, or -1 if user is missing in cloud mode.
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     * @throws InvalidKeySpecException
+     */
+    public int decryptEach(Iterator<UBLChaincodeTO> messages, ApiUser user, Consumer<UBLChaincodeTO> consumer) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException {
 
-            for (UBLChaincodeTO.Participant p : message.getParticipants()) {
+        Iterator<UBLChaincodeTO> decrypted = decryptIterator(messages, user);
+        if (decrypted == null) {
+            return -1;
+        }
 
-                //  find yourself in participants so we get the right decryptkey
-                if (p.getMSPID().equals(ownMsp)) {
-                    String decryptedKey = RsaCryptoHandler.decrypt(p.getEncryptedKey(), keyPair);
-                    String ubl = AesCryptoHandler.decrypt(decryptedKey, message.getEncryptedMessage());
-                    messageList.add(ubl);
-                    break;
+        int delivered = 0;
+        while (decrypted.hasNext()) {
+            consumer.accept(decrypted.next());
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * Decrypts messages in parallel and passes them to consumer in the same order they are in the given list.
+     * Consumer is called on the caller's thread as soon as next message in order is decrypted, so the whole result
+     * is never kept in memory. Decrypted content is set to {@link UBLChaincodeTO#decryptedMessage} of the given
+     * messages, their encrypted content is left as it is.
+     * Messages which are not meant for this organisation, or which cannot be decrypted, are skipped.
+     *
+     * When several messages share the same encrypted secret key, RSA decryption of the key is done only once.
+     *
+     * @param messages
+     * @param user
+     * @param consumer
+     * @return Amount of messages passed to consumer, or -1 if user is missing in cloud mode.
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     * @throws InvalidKeySpecException
+     */
+    public int decryptParallel(List<UBLChaincodeTO> messages, ApiUser user, Consumer<UBLChaincodeTO> consumer) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException {
+        //Caller still holds the list, so encrypted content is kept
+        return decryptParallel(messages.iterator(), user, consumer, false);
+    }
+
+    /**
+     * Same as {@link #decryptParallel(List, ApiUser, Consumer)}, but reads messages from iterator. Messages are taken
+     * from the iterator only as fast as consumer accepts them, and encrypted content of each message is dropped after
+     * decryption. When messages are streamed from the ledger, memory use stays bounded regardless of result size.
+     *
+     * @param messages
+     * @param user
+     * @param consumer
+     * @return Amount of messages passed to consumer, or -1 if user is missing in cloud mode.
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     * @throws InvalidKeySpecException
+     */
+    public int decryptParallel(Iterator<UBLChaincodeTO> messages, ApiUser user, Consumer<UBLChaincodeTO> consumer) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException {
+        return decryptParallel(messages, user, consumer, true);
+    }
+
+    private int decryptParallel(Iterator<UBLChaincodeTO> messages, ApiUser user, Consumer<UBLChaincodeTO> consumer, boolean dropEncrypted) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException {
+
+        logger.debug("Decrypting crypted messages back to UBL in parallel");
+
+        DecryptionContext context = createDecryptionContext(user);
+        if (context == null) {
+            return -1;
+        }
+
+        ExecutorService executor = getDecryptExecutor();
+        ConcurrentMap<String, CompletableFuture<byte[]>> decryptedKeys = new ConcurrentHashMap<>();
+        Deque<CompletableFuture<UBLChaincodeTO>> inProgress = new ArrayDeque<>(MAX_DECRYPT_AHEAD);
+        int delivered = 0;
+
+        try {
+            while (messages.hasNext()) {
+                UBLChaincodeTO message = messages.next();
+                if (inProgress.size() >= MAX_DECRYPT_AHEAD) {
+                    delivered += deliver(inProgress.poll(), consumer);
                 }
+                inProgress.add(context.decryptAsync(message, decryptedKeys, executor, dropEncrypted));
+            }
+            while (!inProgress.isEmpty()) {
+                delivered += deliver(inProgress.poll(), consumer);
+            }
+        } finally {
+            //Consumer failed, do not leave work running for nobody
+            for (CompletableFuture<UBLChaincodeTO> future : inProgress) {
+                future.cancel(false);
             }
         }
 
-        return messageList;
+        return delivered;
     }
 
     /**
-     * Takes list of UBLChaincodeTO's as an argument, gets organizations private key from disk
-     * and tries to decrypt its secret key with it. If decrypt is successful, the decrypted key is then used
-     * to decrypt the whole message.
+     * Parallel version of {@link #decrypt(List, ApiUser)}. Order of the returned messages is the same as in the given list.
+     * Unlike {@link #decrypt(List, ApiUser)}, messages which cannot be decrypted are skipped, not returned as null.
+     * {@link UBLChaincodeTO#decryptedMessage} of the given messages is set, their encrypted content is left as it is.
      *
      * @param messages
      * @param user
-     * @return
+     * @return List of decrypted messages
      * @throws NoSuchAlgorithmException
      * @throws IOException
      * @throws InvalidKeySpecException
      */
-    public List<UBLChaincodeTO> decryptAndGetAsUBLChaincodeTOList(List<UBLChaincodeTO> messages, ApiUser user) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException, ConfigurationException {
+    public List<String> decryptParallel(List<UBLChaincodeTO> messages, ApiUser user) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException {
+        List<String> messageList = new ArrayList<String>(messages.size());
+        if (decryptParallel(messages, user, message -> messageList.add(message.decryptedMessage)) < 0) {
+            return null;
+        }
+        return messageList;
+    }
 
-        logger.debug("Decrypting crypted messages back to UBL");
+    private static int deliver(CompletableFuture<UBLChaincodeTO> future, Consumer<UBLChaincodeTO> consumer) {
+        UBLChaincodeTO message = future.join();
+        if (message == null) {
+            return 0;
+        }
+        consumer.accept(message);
+        return 1;
+    }
 
-        List<UBLChaincodeTO> messageList = new ArrayList<UBLChaincodeTO>();
+    private static ExecutorService getDecryptExecutor() {
+        if (decryptExecutor == null) {
+            synchronized (MessageDecryptor.class) {
+                if (decryptExecutor == null) {
+                    decryptExecutor = Executors.newFixedThreadPool(DECRYPT_THREADS, new DaemonThreadFactory("message-decrypt"));
+                }
+            }
+        }
+        return decryptExecutor;
+    }
 
-        //Check for PeerType configuration, if CLOUD type, create full path. Otherwise use configured 'privateKeyPath'.
-        ConfigReader configReader = new ConfigReader();
-        OrganisationConfiguration organisationConfiguration = configReader.getOrganisationConfiguration();
+    /**
+     * Resolve private key and own MSPID for decrypting messages.
+     * In cloud mode private key of user's domain comes from TenantKeyStore, otherwise it's loaded from PrivateKeyCache.
+     * Either way it's read from disk only when the key file has changed.
+     * @param user
+     * @return Context for decrypting, or null if user is missing in cloud mode.
+     */
+    private DecryptionContext createDecryptionContext(ApiUser user) throws NoSuchAlgorithmException, IOException, InvalidKeySpecException {
+
+        //Check for PeerType configuration, if CLOUD type, use key of user's domain. Otherwise use configured 'privateKeyPath'.
+        OrganisationConfiguration organisationConfiguration = connector.getConfig();
 
-        PrivateKey privateKey = null;
-        String privateKeyPath = null;
+        PrivateKeyCache.KeyMaterial keyMaterial;
         if(organisationConfiguration.isCloudInstallation()) {
 
             if(user == null) {
@@ -169,52 +338,135 @@ public class MessageDecryptor {
                 return null;
             }
 
-            privateKeyPath = createCloudPrivateKeyPath(organisationConfiguration.cloudKeyPath, user.getDomainName());
+            //Key path is '{cloudKeyPath}/{domainName}/crypto-config/private.key', resolved by the store
+            keyMaterial = TenantKeyStore.forCloudKeyPath(organisationConfiguration.cloudKeyPath).get(user.getDomainName());
         }
         else {
-            privateKeyPath = connector.getConfig().privateKeyPath;
+            keyMaterial = PrivateKeyCache.getDefault().get(organisationConfiguration.privateKeyPath, "RSA");
         }
 
-        //Key path solved, load the private key now
-        privateKey = CryptoUtil.loadPrivateKey(privateKeyPath, "RSA");
-        KeyPair keyPair = new KeyPair(null, privateKey);
-
-        String ownMsp = connector.getConfig().organisation.getMspid();
+        String ownMsp = organisationConfiguration.organisation.getMspid();
 
         if(organisationConfiguration.isCloudInstallation()) {
             ownMsp = user.getOrganisation();
         }
 
-        for (UBLChaincodeTO message : messages) {
+        return new DecryptionContext(ownMsp, keyMaterial);
+    }
 
-            for (UBLChaincodeTO.Participant p : message.getParticipants()) {
+    /**
+     * Organisation's MSPID and private key, used to decrypt messages sent to the organisation.
+     */
+    private static class DecryptionContext {
 
-                //  find yourself in participants so we get the right decryptkey
-                if (p.getMSPID().equals(ownMsp)) {
-                    String decryptedKey = RsaCryptoHandler.decrypt(p.getEncryptedKey(), keyPair);
-                    message.decryptedMessage = AesCryptoHandler.decrypt(decryptedKey, message.getEncryptedMessage());
-                    messageList.add(message);
-                    break;
-                }
+        private final String ownMsp;
+        private final PrivateKeyCache.KeyMaterial keyMaterial;
+
+        DecryptionContext(String ownMsp, PrivateKeyCache.KeyMaterial keyMaterial) {
+            //Participant MSPIDs are interned, so lookups with interned MSPID usually match by identity
+            this.ownMsp = ownMsp != null ? ownMsp.intern() : null;
+            this.keyMaterial = keyMaterial;
+        }
+
+        /**
+         * Decrypt message if this organisation is one of its participants.
+         * @param message
+         * @return Decrypted message, or null if organisation is not participant of the message.
+         */
+        String decrypt(UBLChaincodeTO message) {
+            String encryptedKey = findEncryptedKey(message);
+            if (encryptedKey == null) {
+                return null;
             }
+            byte[] decryptedKey = RsaCryptoHandler.unwrapKey(encryptedKey, keyMaterial.getDecryptCipher());
+            return decryptedKey != null ? MessageEnvelope.decrypt(decryptedKey, message.getEncryptedMessage()) : null;
         }
 
-        return messageList;
+        /**
+         * Decrypt message in given executor. Decrypted secret keys are shared through decryptedKeys map,
+         * so each distinct encrypted key is RSA decrypted only once.
+         * @param message
+         * @param decryptedKeys
+         * @param executor
+         * @param dropEncrypted Clear encrypted content of the message after decryption, when caller doesn't keep it
+         * @return Future of the message with decrypted content, completes with null if message could not be decrypted.
+         */
+        CompletableFuture<UBLChaincodeTO> decryptAsync(UBLChaincodeTO message, ConcurrentMap<String, CompletableFuture<byte[]>> decryptedKeys, ExecutorService executor, boolean dropEncrypted) {
+
+            String encryptedKey = findEncryptedKey(message);
+            if (encryptedKey == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            CompletableFuture<byte[]> decryptedKey = decryptedKeys.computeIfAbsent(encryptedKey,
+                    key -> CompletableFuture.supplyAsync(() -> RsaCryptoHandler.unwrapKey(key, keyMaterial.getDecryptCipher()), executor));
+
+            return decryptedKey.thenApplyAsync(key -> {
+                String ubl = key != null ? MessageEnvelope.decrypt(key, message.getEncryptedMessage()) : null;
+                if (ubl == null) {
+                    return null;
+                }
+                message.decryptedMessage = ubl;
+                if (dropEncrypted) {
+                    message.setEncryptedMessage(null);
+                }
+                return message;
+            }, executor);
+        }
+
+        /**
+         * Is this organisation one of the participants of the message.
+         * @param message
+         * @return
+         */
+        boolean isRecipient(UBLChaincodeTO message) {
+            return findEncryptedKey(message) != null;
+        }
+
+        private String findEncryptedKey(UBLChaincodeTO message) {
+
+            //  find yourself in participants so we get the right decryptkey
+            UBLChaincodeTO.Participant p = message.getParticipant(ownMsp);
+            return p != null ? p.getEncryptedKey() : null;
+        }
     }
 
     /**
-     * Create full file path to organisation's private key, in cloud mode.
-     * File path template is: '{cloudPrivateKeyPath}/{domainName}/crypto-config/private.key'
-     * Where cloudPrivateKeyPath is value from OrganisationConfiguration, behind key: cloudPrivateKeyPath
-     * and domainName is organisations configured domain name.
-     *
-     * For example: domainName
-     * @return Full path to private key file.
+     * Lazily decrypting iterator, see {@link #decryptIterator(Iterator, ApiUser)}.
      */
-    private String createCloudPrivateKeyPath(String cloudPrivateKeyPath, String domainName) {
-        logger.debug("Constructing full path to organisation's private key. cloudPrivateKeyPath: '{}'. domainName: '{}'", cloudPrivateKeyPath, domainName);
-        String fullPath = DataFormatter.fillTemplate(CLOUD_PRIVATE_KEY_PATH_TEMPLATE, cloudPrivateKeyPath, domainName);
-        logger.debug("Created path: '{}'", fullPath);
-        return fullPath;
+    private static class DecryptingIterator implements Iterator<UBLChaincodeTO> {
+
+        private final Iterator<UBLChaincodeTO> source;
+        private final DecryptionContext context;
+        private UBLChaincodeTO next;
+
+        DecryptingIterator(Iterator<UBLChaincodeTO> source, DecryptionContext context) {
+            this.source = source;
+            this.context = context;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && source.hasNext()) {
+                UBLChaincodeTO message = source.next();
+                String ubl = context.decrypt(message);
+                if (ubl != null) {
+                    message.decryptedMessage = ubl;
+                    message.setEncryptedMessage(null);
+                    next = message;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public UBLChaincodeTO next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            UBLChaincodeTO message = next;
+            next = null;
+            return message;
+        }
     }
 }
@@ -0,0 +1,183 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.util;
+
+import com.propentus.common.exception.BlockchainException;
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
+import com.propentus.iot.BlockchainConnector;
+import com.propentus.iot.chaincode.KeystoreChaincodeService;
+import com.propentus.iot.chaincode.TransportChainChaincode;
+import com.propentus.iot.chaincode.model.OrganisationChaincodeTO;
+import com.propentus.iot.chaincode.model.TransportChaincodeTO;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+import com.propentus.smartlog.security.CryptoUtil;
+import com.propentus.smartlog.security.MessageEnvelope;
+import com.propentus.smartlog.security.RsaCryptoHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Encrypts UBL messages for participants of their transport chain. Counterpart of {@link MessageDecryptor}.
+ *
+ * Content is encrypted once with random secret key as version 2 {@link MessageEnvelope}, and the secret key is
+ * encrypted with public key of every participant. Key wraps are done in parallel, so encrypting for large supply
+ * chains doesn't take participant count times one RSA operation. Public keys come from the cached Keystore.
+ */
+public class MessageEncryptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageEncryptor.class);
+
+    private static final int ENCRYPT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    //Shared by all encryptors, so concurrent API calls cannot create more threads than there are cores
+    private static volatile ExecutorService encryptExecutor;
+
+    private final TransportChainChaincode transportChains;
+    private final KeystoreChaincodeService keystore;
+
+    public MessageEncryptor(BlockchainConnector connector) {
+        this(new TransportChainChaincode(connector), new KeystoreChaincodeService(connector));
+    }
+
+    public MessageEncryptor(TransportChainChaincode transportChains, KeystoreChaincodeService keystore) {
+        this.transportChains = transportChains;
+        this.keystore = keystore;
+    }
+
+    /**
+     * Encrypt UBL for participants of message's supply chain, read from TransportChain Smart contract.
+     * @param message Message with metadata filled. Encrypted content and participants are set to it.
+     * @param ubl Plaintext UBL
+     * @return Given message, ready to be sent with {@link com.propentus.iot.chaincode.UBLChaincodeService#addMessage}.
+     * @throws BlockchainException If transport chain or public key of some participant can't be found.
+     */
+    public UBLChaincodeTO encrypt(UBLChaincodeTO message, String ubl) throws BlockchainException {
+
+        TransportChaincodeTO[] chains = transportChains.getTransportChain(message.getSupplyChainID());
+        if (chains == null) {
+            throw new BlockchainException("Transport chain '" + message.getSupplyChainID() + "' was not found");
+        }
+
+        Set<String> participants = new LinkedHashSet<>();
+        for (TransportChaincodeTO chain : chains) {
+            participants.addAll(chain.getParticipants());
+        }
+        return encrypt(message, ubl, participants);
+    }
+
+    /**
+     * Encrypt UBL for given participants.
+     * @param message Message with metadata filled. Encrypted content and participants are set to it.
+     * @param ubl Plaintext UBL
+     * @param participantMSPIDs
+     * @return Given message
+     * @throws BlockchainException If public key of some participant can't be found.
+     */
+    public UBLChaincodeTO encrypt(UBLChaincodeTO message, String ubl, Collection<String> participantMSPIDs) throws BlockchainException {
+
+        if (participantMSPIDs.isEmpty()) {
+            throw new IllegalArgumentException("Message must have at least one participant");
+        }
+
+        byte[] secretKey = MessageEnvelope.generateKey();
+
+        //Start key wraps first, so they run while the content is encrypted in this thread
+        List<CompletableFuture<UBLChaincodeTO.Participant>> wraps = new ArrayList<>(participantMSPIDs.size());
+        for (String mspID : participantMSPIDs) {
+            wraps.add(CompletableFuture.supplyAsync(() -> wrapKey(secretKey, mspID), getEncryptExecutor()));
+        }
+
+        String encryptedMessage = MessageEnvelope.encrypt(secretKey, ubl);
+
+        List<UBLChaincodeTO.Participant> participants = new ArrayList<>(wraps.size());
+        try {
+            for (CompletableFuture<UBLChaincodeTO.Participant> wrap : wraps) {
+                participants.add(wrap.join());
+            }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof BlockchainException) {
+                throw (BlockchainException) cause;
+            }
+            throw new BlockchainException("Encrypting secret key failed!", cause);
+        }
+
+        logger.debug("Encrypted message for {} participants", participants.size());
+
+        message.setEncryptedMessage(encryptedMessage);
+        message.participants = participants;
+        return message;
+    }
+
+    private UBLChaincodeTO.Participant wrapKey(byte[] secretKey, String mspID) {
+        try {
+            UBLChaincodeTO.Participant participant = new UBLChaincodeTO.Participant();
+            participant.setMSPID(mspID);
+            participant.setEncryptedKey(RsaCryptoHandler.wrapKey(secretKey, getPublicKey(mspID)));
+            return participant;
+        } catch (BlockchainException e) {
+            throw new CompletionException(e);
+        } catch (Exception e) {
+            throw new CompletionException(new BlockchainException("Encrypting secret key for '" + mspID + "' failed!", e));
+        }
+    }
+
+    private PublicKey getPublicKey(String mspID) throws Exception {
+
+        OrganisationChaincodeTO organisation = keystore.getOrganisation(mspID);
+        if (organisation == null || organisation.getPublicKey() == null) {
+            throw new BlockchainException("Public key of organisation '" + mspID + "' was not found from Keystore");
+        }
+
+        //Decoded keys are cached by CryptoUtil, so the same Keystore entry is decoded only once
+        return CryptoUtil.base64ToPublicKey(organisation.getPublicKey());
+    }
+
+    private static ExecutorService getEncryptExecutor() {
+        if (encryptExecutor == null) {
+            synchronized (MessageEncryptor.class) {
+                if (encryptExecutor == null) {
+                    encryptExecutor = Executors.newFixedThreadPool(ENCRYPT_THREADS, new DaemonThreadFactory("message-encrypt"));
+                }
+            }
+        }
+        return encryptExecutor;
+    }
+}
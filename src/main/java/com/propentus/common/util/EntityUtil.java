@@ -30,6 +30,7 @@ package com.propentus.common.util;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +41,7 @@ import javax.xml.bind.Unmarshaller;
 import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
 import java.util.*;
 
 
@@ -51,6 +53,17 @@ public class EntityUtil {
 
 	private static final Logger logger = LoggerFactory.getLogger(EntityUtil.class);
 
+	//Type adapters registered with registerTypeAdapter, guarded by EntityUtil.class
+	private static final Map<Type, Object> typeAdapters = new LinkedHashMap<Type, Object>();
+
+	//Gson instances are thread-safe, so they are shared by all callers. Recreated when type adapters change.
+	private static volatile Gson compactGson;
+	private static volatile Gson prettyGson;
+
+	static {
+		createGsonInstances();
+	}
+
 	/**
 	 * Transforms class object's fields to key value HashMap. Useful, for
 	 * example when we need to save Grails domain class to session.
@@ -205,14 +218,82 @@ public class EntityUtil {
 	    return sw.toString();
 	}
 
+	/**
+	 * Convert Object to pretty printed JSON, for files and logs which are read by people.
+	 * @param o
+	 * @return
+	 */
 	public static String ObjectToJson(Object o) {
-		Gson gson = new GsonBuilder().setPrettyPrinting().create();
-		return gson.toJson(o);
+		return prettyGson.toJson(o);
+	}
+
+	/**
+	 * Convert Object to JSON without any whitespace, for payloads sent over network or written to the ledger.
+	 * @param o
+	 * @return
+	 */
+	public static String ObjectToCompactJson(Object o) {
+		return compactGson.toJson(o);
 	}
 
 	public static <T> T JsonToObject(String json, Class<T> type) {
-		Gson gson = new GsonBuilder().create();
-		return gson.fromJson(json, type);
+		return compactGson.fromJson(json, type);
+	}
+
+	/**
+	 * Read Object from JSON stream, without reading the whole JSON to String first.
+	 * @param reader
+	 * @param type
+	 * @return
+	 */
+	public static <T> T JsonToObject(Reader reader, Class<T> type) {
+		return compactGson.fromJson(reader, type);
+	}
+
+	/**
+	 * Read next value of the stream as Object. Used to read large JSON arrays one element at a time.
+	 * @param reader
+	 * @param type
+	 * @return
+	 */
+	public static <T> T JsonToObject(JsonReader reader, Class<T> type) {
+		return compactGson.fromJson(reader, type);
+	}
+
+	/**
+	 * Shared compact Gson instance with all registered type adapters.
+	 * @return
+	 */
+	public static Gson getGson() {
+		return compactGson;
+	}
+
+	/**
+	 * Shared pretty printing Gson instance with all registered type adapters.
+	 * @return
+	 */
+	public static Gson getPrettyGson() {
+		return prettyGson;
+	}
+
+	/**
+	 * Register type adapter for all JSON conversions done with EntityUtil. Adapters of own classes can also be
+	 * attached with {@link com.google.gson.annotations.JsonAdapter}, which doesn't need registering.
+	 * @param type
+	 * @param typeAdapter TypeAdapter, TypeAdapterFactory, JsonSerializer, JsonDeserializer or InstanceCreator
+	 */
+	public static synchronized void registerTypeAdapter(Type type, Object typeAdapter) {
+		typeAdapters.put(type, typeAdapter);
+		createGsonInstances();
+	}
+
+	private static synchronized void createGsonInstances() {
+		GsonBuilder builder = new GsonBuilder();
+		for (Map.Entry<Type, Object> typeAdapter : typeAdapters.entrySet()) {
+			builder.registerTypeAdapter(typeAdapter.getKey(), typeAdapter.getValue());
+		}
+		compactGson = builder.create();
+		prettyGson = builder.setPrettyPrinting().create();
 	}
 
 	/**
@@ -0,0 +1,238 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.common.util.cache;
+
+import com.propentus.common.util.concurrent.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded, thread-safe read-through cache.
+ *
+ * - Loading is single-flight: concurrent callers missing the same key wait for one load instead of loading in parallel.
+ * - Entries older than ttlMillis are stale. Stale value is returned immediately and refreshed in background.
+ *   If refresh fails, stale value is kept and served until next refresh succeeds.
+ * - When cache holds maxSize entries, least recently used entry is evicted.
+ * - Null values are never cached.
+ */
+public class LoadingCache<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadingCache.class);
+
+    /**
+     * Loads value for key on cache miss or refresh.
+     */
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private static class CacheEntry<V> {
+        final V value;
+        final long loadedAtMillis;
+
+        CacheEntry(V value, long loadedAtMillis) {
+            this.value = value;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+    }
+
+    private final String name;
+    private final long ttlMillis;
+    private final Map<K, CacheEntry<V>> entries;
+    private final ConcurrentMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final ExecutorService refreshExecutor;
+
+    //Incremented on invalidation, so loads started before invalidation don't store their values. Guarded by entries.
+    private long generation = 0;
+
+    /**
+     * @param name Name of cache, used in logging and refresh thread names
+     * @param maxSize Maximum amount of entries
+     * @param ttlMillis Time after which entry is refreshed
+     */
+    public LoadingCache(String name, int maxSize, long ttlMillis) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LruMap<>(maxSize);
+        this.refreshExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory(name + "-refresh"));
+    }
+
+    /**
+     * Get value for key, loading it with given loader if it is not cached. Stale values are returned immediately
+     * and refreshed in background with the same loader.
+     * @param key
+     * @param loader
+     * @return Cached or loaded value. Null if loader returned null.
+     * @throws Exception Exception thrown by loader, if there was no cached value to fall back to
+     */
+    public V get(K key, Loader<? super K, V> loader) throws Exception {
+
+        CacheEntry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+
+        if (entry != null) {
+            if (System.currentTimeMillis() - entry.loadedAtMillis >= ttlMillis) {
+                refreshInBackground(key, loader);
+            }
+            return entry.value;
+        }
+
+        CompletableFuture<V> newLoad = new CompletableFuture<>();
+        CompletableFuture<V> existingLoad = loading.putIfAbsent(key, newLoad);
+        if (existingLoad != null) {
+            return await(existingLoad);
+        }
+
+        load(key, loader, newLoad);
+        return await(newLoad);
+    }
+
+    /**
+     * Get value for key if it is cached, without loading or refreshing it.
+     * @param key
+     * @return
+     */
+    public V getIfPresent(K key) {
+        synchronized (entries) {
+            CacheEntry<V> entry = entries.get(key);
+            return entry == null ? null : entry.value;
+        }
+    }
+
+    /**
+     * Store value to cache. Null values are ignored. Value is stored even if cache was invalidated while it was read,
+     * use {@link #putIfGeneration(Object, Object, long)} for values read from the source outside of get.
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        if (value == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Store value to cache only if cache has not been invalidated since startGeneration was read with
+     * {@link #getGeneration()}. Prevents value read before invalidation from overwriting it. Null values are ignored.
+     * @param key
+     * @param value
+     * @param startGeneration Generation read before the value was read from the source
+     * @return True if value was stored.
+     */
+    public boolean putIfGeneration(K key, V value, long startGeneration) {
+        if (value == null) {
+            return false;
+        }
+        synchronized (entries) {
+            if (generation != startGeneration) {
+                return false;
+            }
+            entries.put(key, new CacheEntry<V>(value, System.currentTimeMillis()));
+            return true;
+        }
+    }
+
+    /**
+     * Current invalidation generation. Read it before reading values from the source, and pass it to
+     * {@link #putIfGeneration(Object, Object, long)}.
+     * @return
+     */
+    public long getGeneration() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void refreshInBackground(final K key, final Loader<? super K, V> loader) {
+        final CompletableFuture<V> refresh = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, refresh) == null) {
+            refreshExecutor.execute(() -> load(key, loader, refresh));
+        }
+    }
+
+    private void load(K key, Loader<? super K, V> loader, CompletableFuture<V> result) {
+        long startGeneration = getGeneration();
+
+        try {
+            V value = loader.load(key);
+            putIfGeneration(key, value, startGeneration);
+            result.complete(value);
+        } catch (Exception e) {
+            logger.warn("Cache '" + name + "' failed to load key '" + key + "', serving stale value if available", e);
+            result.completeExceptionally(e);
+        } finally {
+            loading.remove(key, result);
+        }
+    }
+
+    private V await(CompletableFuture<V> load) throws Exception {
+        try {
+            return load.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
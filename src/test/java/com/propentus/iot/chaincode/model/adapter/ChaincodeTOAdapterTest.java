@@ -0,0 +1,147 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.chaincode.model.adapter;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import com.propentus.iot.chaincode.model.OrganisationChaincodeTO;
+import com.propentus.iot.chaincode.model.TransportChaincodeTO;
+import com.propentus.iot.chaincode.model.UBLChaincodeTO;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Adapters must write the same JSON as Gson's default reflective adapter, which wrote the data already on ledger.
+ */
+public class ChaincodeTOAdapterTest {
+
+    private static final Gson GSON = new Gson();
+
+    //Not registered with GSON, so getDelegateAdapter skips @JsonAdapter and returns the reflective adapter
+    private static final TypeAdapterFactory SKIP_JSON_ADAPTER = new TypeAdapterFactory() {
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return null;
+        }
+    };
+
+    @Test
+    public void populatedUBLMessageIsWrittenAsByGson() {
+        UBLChaincodeTO message = new UBLChaincodeTO();
+        message.setDecryptedMessage("<Invoice>not written</Invoice>");
+        message.setEncryptedMessage("v2:AAECAwQ=");
+        message.participants.add(participant("Org1MSP", "a2V5MQ=="));
+        message.participants.add(null);
+        message.participants.add(participant("Org2MSP", null));
+        message.setDocumentID("doc-1");
+        message.setOrganisationID("Org1MSP");
+        message.setSupplyChainID("chain-1");
+        message.setContainerID("CSQU3054383");
+        message.setSenderParty("Sender & Co <sender@example.com>");
+        message.setRFIDTransportEquipment("urn:epc:id:sgtin:1");
+        message.setRFIDTransportHandlingUnit("urn:epc:id:sgtin:2");
+        message.setStatusTypeCode("LOADED");
+        message.setTimestamp("2019-01-01 12:00:00+0200");
+        message.setCarrierAssignedID("carrier-1");
+        message.setShippingOrderID("order-1");
+        message.setEmptyFullIndicator(UBLChaincodeTO.FullEmptyIndicator.FULL);
+        message.setContentType("UBL");
+        message.setContentTypeSchemeVersion("2.1");
+        message.setStatusLocationId("reader \"1\"");
+
+        assertWrittenAsByGson(UBLChaincodeTO.class, message);
+    }
+
+    @Test
+    public void emptyUBLMessageIsWrittenAsByGson() {
+        UBLChaincodeTO message = new UBLChaincodeTO();
+        assertWrittenAsByGson(UBLChaincodeTO.class, message);
+
+        message.participants = null;
+        assertWrittenAsByGson(UBLChaincodeTO.class, message);
+    }
+
+    @Test
+    public void transportIsWrittenAsByGson() {
+        TransportChaincodeTO transport = new TransportChaincodeTO();
+        transport.setId("transport-1");
+        transport.setParticipants(new ArrayList<>(Arrays.asList("Org1MSP", null, "Org2MSP")));
+        assertWrittenAsByGson(TransportChaincodeTO.class, transport);
+
+        TransportChaincodeTO empty = new TransportChaincodeTO();
+        assertWrittenAsByGson(TransportChaincodeTO.class, empty);
+
+        empty.setParticipants(null);
+        assertWrittenAsByGson(TransportChaincodeTO.class, empty);
+    }
+
+    @Test
+    public void organisationIsWrittenAsByGson() {
+        OrganisationChaincodeTO organisation = new OrganisationChaincodeTO();
+        organisation.setMspID("Org1MSP");
+        organisation.setPublicKey("MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA+/=");
+        assertWrittenAsByGson(OrganisationChaincodeTO.class, organisation);
+
+        assertWrittenAsByGson(OrganisationChaincodeTO.class, new OrganisationChaincodeTO());
+    }
+
+    private static <T> void assertWrittenAsByGson(Class<T> type, T value) {
+        TypeAdapter<T> reflective = GSON.getDelegateAdapter(SKIP_JSON_ADAPTER, TypeToken.get(type));
+        assertTrue(reflective instanceof ReflectiveTypeAdapterFactory.Adapter);
+
+        //Gson.toJson escapes HTML characters, newJsonWriter doesn't
+        StringWriter expected = new StringWriter();
+        try {
+            JsonWriter writer = GSON.newJsonWriter(expected);
+            writer.setHtmlSafe(GSON.htmlSafe());
+            reflective.write(writer, value);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        assertEquals(expected.toString(), GSON.toJson(value));
+    }
+
+    private static UBLChaincodeTO.Participant participant(String mspID, String encryptedKey) {
+        UBLChaincodeTO.Participant participant = new UBLChaincodeTO.Participant();
+        participant.setMSPID(mspID);
+        participant.setEncryptedKey(encryptedKey);
+        return participant;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.peer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Routing of PeerSelector against a stub peer set. Peers are plain names, health checks are answered by a stub
+ * probe, so no Fabric network is needed.
+ */
+public class PeerSelectorTest {
+
+    private static final List<String> PEERS = Arrays.asList("peer0", "peer1", "peer2");
+    private static final Function<String, String> NAME = Function.identity();
+
+    private PeerStatisticsRegistry statistics;
+    private PeerSelector selector;
+    private PeerHealthChecker healthChecker;
+
+    //Stub peer set: block height of each peer, and peers whose health check fails
+    private Map<String, Long> blockHeights;
+    private Set<String> failingPeers;
+
+    @Before
+    public void setUp() {
+        statistics = new PeerStatisticsRegistry();
+        //Eject after 3 failures, re-admit after 2 successes, max lag 10 blocks, no probation during test
+        selector = new PeerSelector(statistics, 3, 2, 10, TimeUnit.HOURS.toMillis(1));
+
+        blockHeights = new HashMap<>();
+        failingPeers = new HashSet<>();
+        for (String peer : PEERS) {
+            blockHeights.put(peer, 100L);
+        }
+        healthChecker = new PeerHealthChecker(PEERS, peerName -> {
+            if (failingPeers.contains(peerName)) {
+                throw new IllegalStateException("Peer " + peerName + " is down");
+            }
+            return blockHeights.get(peerName);
+        }, statistics);
+    }
+
+    @Test
+    public void routesToPeersInScoreOrder() {
+        recordLatency("peer0", 30);
+        recordLatency("peer1", 10);
+        recordLatency("peer2", 20);
+
+        assertEquals(Arrays.asList("peer1", "peer2", "peer0"), selector.selectHealthy(PEERS, NAME));
+        assertEquals(Arrays.asList("peer1", "peer2"), selector.select(PEERS, NAME, 2));
+    }
+
+    @Test
+    public void errorsAndBlockLagLowerScore() {
+        recordLatency("peer0", 10);
+        recordLatency("peer1", 10);
+        recordLatency("peer2", 10);
+
+        statistics.get("peer0").recordFailure();
+        statistics.get("peer1").recordBlockHeight(95);
+        statistics.get("peer2").recordBlockHeight(100);
+
+        //peer1 is 5 blocks behind, which costs more than one recent failure of peer0
+        assertEquals(Arrays.asList("peer2", "peer0", "peer1"), selector.selectHealthy(PEERS, NAME));
+    }
+
+    @Test
+    public void failingPeerWithoutSuccessesDoesNotRankFirst() {
+        recordLatency("peer0", 50);
+        recordLatency("peer1", 80);
+        statistics.get("peer2").recordFailure();
+
+        assertEquals(Arrays.asList("peer0", "peer1", "peer2"), selector.selectHealthy(PEERS, NAME));
+    }
+
+    @Test
+    public void ejectsPeerAfterFailedHealthChecks() {
+        failingPeers.add("peer1");
+        checkHealth(3);
+
+        assertEquals(Arrays.asList("peer0", "peer2"), sorted(selector.selectHealthy(PEERS, NAME)));
+        assertTrue(statistics.get("peer1").isEjected());
+    }
+
+    @Test
+    public void ejectsLaggingPeer() {
+        blockHeights.put("peer2", 80L);
+        checkHealth(1);
+
+        assertEquals(Arrays.asList("peer0", "peer1"), sorted(selector.selectHealthy(PEERS, NAME)));
+        assertTrue(statistics.get("peer2").isEjected());
+    }
+
+    @Test
+    public void keepsLaggingPeerEjectedUntilItCatchesUp() {
+        blockHeights.put("peer2", 80L);
+        checkHealth(1);
+        assertFalse(selector.selectHealthy(PEERS, NAME).contains("peer2"));
+        assertEquals("Successes before ejection don't count", 0, statistics.get("peer2").getConsecutiveSuccesses());
+
+        //Lagging peer keeps answering health checks, but is not re-admitted and ejected again on every selection
+        checkHealth(3);
+        assertFalse(selector.selectHealthy(PEERS, NAME).contains("peer2"));
+        assertFalse(selector.selectHealthy(PEERS, NAME).contains("peer2"));
+        assertEquals(3, statistics.get("peer2").getConsecutiveSuccesses());
+        assertTrue(statistics.get("peer2").isEjected());
+
+        blockHeights.put("peer2", 100L);
+        checkHealth(1);
+        assertTrue(selector.selectHealthy(PEERS, NAME).contains("peer2"));
+        assertFalse(statistics.get("peer2").isEjected());
+    }
+
+    @Test
+    public void readmitsPeerAfterSuccessfulHealthChecks() {
+        failingPeers.add("peer1");
+        checkHealth(3);
+        assertFalse(selector.selectHealthy(PEERS, NAME).contains("peer1"));
+
+        failingPeers.clear();
+        checkHealth(1);
+        assertFalse("One success is not enough to re-admit", selector.selectHealthy(PEERS, NAME).contains("peer1"));
+
+        checkHealth(1);
+        assertTrue(selector.selectHealthy(PEERS, NAME).contains("peer1"));
+        assertFalse(statistics.get("peer1").isEjected());
+    }
+
+    @Test
+    public void readmitsPeerOnProbationAfterRetryDelay() {
+        selector = new PeerSelector(statistics, 3, 2, 10, 0);
+        failingPeers.add("peer1");
+        checkHealth(3);
+
+        assertFalse(selector.selectHealthy(PEERS, NAME).contains("peer1"));
+
+        //Retry delay has passed, so peer is routed to again, but next failure ejects it
+        assertTrue(selector.selectHealthy(PEERS, NAME).contains("peer1"));
+        checkHealth(1);
+        assertFalse(selector.selectHealthy(PEERS, NAME).contains("peer1"));
+    }
+
+    @Test
+    public void routesToAllPeersWhenAllAreEjected() {
+        failingPeers.addAll(PEERS);
+        checkHealth(3);
+
+        assertEquals(3, selector.selectHealthy(PEERS, NAME).size());
+        assertEquals(2, selector.select(PEERS, NAME, 2).size());
+    }
+
+    @Test
+    public void topsUpSelectionWithEjectedPeers() {
+        recordLatency("peer0", 10);
+        recordLatency("peer1", 30);
+        recordLatency("peer2", 20);
+        failingPeers.add("peer1");
+        failingPeers.add("peer2");
+        checkHealth(3);
+
+        assertEquals(Arrays.asList("peer0"), selector.select(PEERS, NAME, 3));
+        //Healthy peer first, then the best scoring ejected peer
+        assertEquals(Arrays.asList("peer0", "peer2"), selector.select(PEERS, NAME, 3, 2));
+    }
+
+    private void recordLatency(String peer, long millis) {
+        statistics.get(peer).recordSuccess(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private void checkHealth(int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            healthChecker.checkNow();
+        }
+    }
+
+    private static List<String> sorted(List<String> peers) {
+        peers.sort(null);
+        return peers;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.iot.projection;
+
+import org.hyperledger.fabric.sdk.Channel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Journal recovery of UBLEventProjection. Journal and checkpoint files are written directly, so no channel is needed.
+ */
+public class UBLEventProjectionTest {
+
+    private static final String JOURNAL_FILE = "ubl-events.journal";
+    private static final String CHECKPOINT_FILE = "ubl-events.checkpoint";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entryAppendedAfterPartialLineIsLoaded() throws Exception {
+        Path store = folder.getRoot().toPath();
+        //Process was killed while writing entry of block 2, checkpoint is still at block 1
+        String tornLine = entry("key2", 2, "container2").substring(0, 30);
+        Files.write(store.resolve(JOURNAL_FILE), (entry("key1", 1, "container1") + "\n" + tornLine).getBytes(StandardCharsets.UTF_8));
+        Files.write(store.resolve(CHECKPOINT_FILE), "1".getBytes(StandardCharsets.UTF_8));
+
+        UBLEventProjection projection = new UBLEventProjection((Channel) null, store);
+        projection.openJournal();
+        assertEquals(1, projection.size());
+
+        projection.close();
+
+        //Block 2 is processed again after restart, and its entry is appended to the journal
+        appendEntry(store, entry("key2", 2, "container2"));
+        Files.write(store.resolve(CHECKPOINT_FILE), "2".getBytes(StandardCharsets.UTF_8));
+
+        UBLEventProjection reloaded = new UBLEventProjection((Channel) null, store);
+        reloaded.openJournal();
+        reloaded.close();
+
+        assertEquals(2, reloaded.size());
+        assertNotNull(reloaded.get("key1"));
+        assertNotNull(reloaded.get("key2"));
+        assertEquals(1, reloaded.getByContainerID("container2").size());
+    }
+
+    @Test
+    public void journalWithoutPartialLineIsNotChanged() throws Exception {
+        Path store = folder.getRoot().toPath();
+        byte[] journal = (entry("key1", 1, "container1") + "\n").getBytes(StandardCharsets.UTF_8);
+        Files.write(store.resolve(JOURNAL_FILE), journal);
+        Files.write(store.resolve(CHECKPOINT_FILE), "1".getBytes(StandardCharsets.UTF_8));
+
+        UBLEventProjection projection = new UBLEventProjection((Channel) null, store);
+        projection.openJournal();
+        projection.close();
+
+        assertEquals(1, projection.size());
+        assertEquals(journal.length, Files.size(store.resolve(JOURNAL_FILE)));
+    }
+
+    private static String entry(String key, long blockNumber, String containerID) {
+        return "{\"key\":\"" + key + "\",\"transactionID\":\"tx-" + key + "\",\"blockNumber\":" + blockNumber
+                + ",\"message\":{\"containerID\":\"" + containerID + "\"}}";
+    }
+
+    private static void appendEntry(Path store, String line) throws Exception {
+        Files.write(store.resolve(JOURNAL_FILE), (line + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.security;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Key encoding of KeyCodec and CryptoUtil. Keys published by earlier versions are Java serialized, see
+ * {@link #legacySerialize(Object)}, and must still decode.
+ */
+public class KeyCodecTest {
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @Test
+    public void legacySerializedKeysAreDecoded() throws Exception {
+        PublicKey publicKey = CryptoUtil.base64ToPublicKey(legacySerialize(keyPair.getPublic()));
+        assertArrayEquals(keyPair.getPublic().getEncoded(), publicKey.getEncoded());
+
+        PrivateKey privateKey = CryptoUtil.base64ToPrivateKey(legacySerialize(keyPair.getPrivate()));
+        assertArrayEquals(keyPair.getPrivate().getEncoded(), privateKey.getEncoded());
+
+        KeyPair decoded = CryptoUtil.base64ToKeyPair(legacySerialize(keyPair));
+        assertArrayEquals(keyPair.getPublic().getEncoded(), decoded.getPublic().getEncoded());
+        assertArrayEquals(keyPair.getPrivate().getEncoded(), decoded.getPrivate().getEncoded());
+    }
+
+    @Test
+    public void derKeysRoundTrip() throws Exception {
+        String encodedPublicKey = CryptoUtil.publicKeyToString(keyPair.getPublic());
+        assertFalse(KeyCodec.isSerialized(Base64.getDecoder().decode(encodedPublicKey)));
+        assertArrayEquals(keyPair.getPublic().getEncoded(), CryptoUtil.base64ToPublicKey(encodedPublicKey).getEncoded());
+
+        String encodedPrivateKey = CryptoUtil.privateKeyToString(keyPair.getPrivate());
+        assertArrayEquals(keyPair.getPrivate().getEncoded(), CryptoUtil.base64ToPrivateKey(encodedPrivateKey).getEncoded());
+
+        KeyPair decoded = CryptoUtil.base64ToKeyPair(CryptoUtil.keypairToString(keyPair));
+        assertEquals(keyPair.getPublic(), decoded.getPublic());
+        assertArrayEquals(keyPair.getPrivate().getEncoded(), decoded.getPrivate().getEncoded());
+    }
+
+    @Test
+    public void serializedNonKeyClassIsRejected() throws Exception {
+        ArrayList<String> notAKey = new ArrayList<>();
+        notAKey.add("not a key");
+        String encoded = legacySerialize(notAKey);
+
+        try {
+            new KeyCodec(10).decodePublicKey(encoded);
+            fail("Serialized ArrayList must not be read");
+        } catch (GeneralSecurityException e) {
+            //Expected
+        }
+        try {
+            CryptoUtil.base64ToKeyPair(encoded);
+            fail("Serialized ArrayList must not be read");
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+
+    /**
+     * Encodes object the same way as CryptoUtil.publicKeyToString and keypairToString did before keys were DER encoded.
+     */
+    private static String legacySerialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *  * Copyright 2016-2019
+ *  *
+ *  * Interreg Central Baltic 2014-2020 funded project
+ *  * Smart Logistics and Freight Villages Initiative, CB426
+ *  *
+ *  * Kouvola Innovation Oy, FINLAND
+ *  * Region Örebro County, SWEDEN
+ *  * Tallinn University of Technology, ESTONIA
+ *  * Foundation Valga County Development Agency, ESTONIA
+ *  * Transport and Telecommunication Institute, LATVIA
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ *
+ */
+
+package com.propentus.smartlog.security;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Version detection and decryption of MessageEnvelope.
+ */
+public class MessageEnvelopeTest {
+
+    private static final String CONTENT = "<Invoice><ID>INV-1</ID></Invoice>";
+
+    private static final String V1_KEY = "0123456789abcdef";
+
+    //Produced by AesCryptoHandler.encrypt(V1_KEY, "RandomInitVector", CONTENT) before version 2 was added
+    private static final String V1_MESSAGE = "Bt1m9Ck/1ITFKG2slJjAJE+GyTAGSX6h5qkFER7vcs9SbLjLu8m+GeQHG45TDyYO";
+
+    @Test
+    public void decryptsVersion1Message() {
+        assertFalse(MessageEnvelope.isVersion2(V1_MESSAGE));
+        assertEquals(CONTENT, MessageEnvelope.decrypt(V1_KEY.getBytes(StandardCharsets.UTF_8), V1_MESSAGE));
+    }
+
+    @Test
+    public void version2MessageRoundTrips() {
+        byte[] key = MessageEnvelope.generateKey();
+        String message = MessageEnvelope.encrypt(key, CONTENT);
+
+        assertTrue(MessageEnvelope.isVersion2(message));
+        assertEquals(CONTENT, MessageEnvelope.decrypt(key, message));
+    }
+
+    @Test
+    public void tamperedVersion2TagIsRejected() {
+        byte[] key = MessageEnvelope.generateKey();
+        String message = MessageEnvelope.encrypt(key, CONTENT);
+
+        byte[] encrypted = Base64.decodeBase64(message.substring(MessageEnvelope.V2_PREFIX.length()));
+        encrypted[encrypted.length - 1] ^= 1;
+        String tampered = MessageEnvelope.V2_PREFIX + Base64.encodeBase64String(encrypted);
+
+        assertNull(MessageEnvelope.decrypt(key, tampered));
+    }
+}